@@ -0,0 +1,320 @@
+package lenger.imageedit;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Throughput Benchmark for the Algorithms in {@link IEAlg}, {@link IPUtil#imgAvg(BufferedImage, BufferedImage)} and {@link ImgEditor}
+ *
+ * <p>every mask is run for every combination of image size, image type and thread count, the result is printed as CSV with
+ * megapixels per second and allocated bytes per pixel, on the calling Thread and on the workers as counted by {@link IEMetrics}.
+ * The time is taken with {@link IEMetrics} disabled, the bytes in a few separate calls after it.
+ * Sizes up to {@value ImgEditor#INLINE_PIXELS} pixels are masked on the calling Thread, they are run once with
+ * {@code inline} in the threads column.</p>
+ * <p>every mask runs in its own JVM, started with the same JVM options, so the code the JIT compiled for one mask does not
+ * slow down the next. {@code --fork false} runs everything in this JVM. Before measuring, a combination is run until two
+ * periods in a row differ by less than 5%, and every result is folded into a checksum printed at the end, so the JIT cannot
+ * drop the work.</p>
+ * <pre>
+ * javac -d out $(find src bench -name "*.java")
+ * java -Xmx8g -cp out lenger.imageedit.IEBenchmark --sizes 256,1080p --threads 1,8 --baseline last.csv --tolerance 0.1 &gt; current.csv
+ * </pre>
+ * <p>with {@code --baseline} every result is compared to the line with the same mask, size, type and threads of an earlier run,
+ * the exit code is {@code 1} if any of them got slower than the {@code --tolerance}, so the run can gate a release</p>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEBenchmark {
+
+    private static final Map<String, int[]> SIZES = new LinkedHashMap<>();
+    private static final Map<String, Integer> TYPES = new LinkedHashMap<>();
+    private static final Map<String, ImgEditor.MaskFunction> MASKS = new LinkedHashMap<>();
+
+    static {
+        SIZES.put("256", new int[]{256, 256});
+        SIZES.put("1080p", new int[]{1920, 1080});
+        SIZES.put("4k", new int[]{3840, 2160});
+        SIZES.put("8k", new int[]{7680, 4320});
+
+        TYPES.put("INT_ARGB", BufferedImage.TYPE_INT_ARGB);
+        TYPES.put("3BYTE_BGR", BufferedImage.TYPE_3BYTE_BGR);
+        TYPES.put("BYTE_GRAY", BufferedImage.TYPE_BYTE_GRAY);
+
+        MASKS.put("contrastMask", IEAlg.CONTRAST_MASK);
+        MASKS.put("pixelStrengthAlg", IEAlg.PIXEL_STRENGTH_MASK);
+        MASKS.put("contrastMaskColor", IEAlg.CONTRAST_COLOR_MASK);
+        MASKS.put("redColorMask", IEAlg.RED_MASK);
+        MASKS.put("greenColorMask", IEAlg.GREEN_MASK);
+        MASKS.put("blueColorMask", IEAlg.BLUE_MASK);
+        MASKS.put("rgColorMask", IEAlg.RG_MASK);
+        MASKS.put("gbColorMask", IEAlg.GB_MASK);
+        MASKS.put("rbColorMask", IEAlg.RB_MASK);
+        MASKS.put("colorstrengthChangeColor", IEAlg.COLORSTRENGTH_MASK);
+        MASKS.put("imgAvg", (img, maInf) -> IPUtil.imgAvg(img, img));
+        MASKS.put("sobel", IEEdge.SOBEL);
+        MASKS.put("scharr", IEEdge.SCHARR);
+        MASKS.put("laplacian", IEEdge.LAPLACIAN);
+        MASKS.put("sobelGray", IEEdge.SOBEL.gray());
+        MASKS.put("gaussian3", IEConvolve.gaussian(3));
+        MASKS.put("box25", IEConvolve.box(25));
+    }
+
+    private static final String HEADER = "mask,size,type,threads,mpix_per_s,bytes_per_pixel";
+    private static final String INLINE = "inline";
+
+    private static final long WARMUP_PERIOD_MILLIS = 200;
+    private static final int MAX_WARMUP_PERIODS = 50;
+    private static final double STABLE = 0.05;
+    private static final int ALLOCATION_CALLS = 5;
+
+    // every result is folded in here and printed at the end, so no call can be dropped as dead code
+    private static long sink = 0;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = parseArgs(args);
+        List<String> sizes = List.of(opts.getOrDefault("sizes", String.join(",", SIZES.keySet())).split(","));
+        List<String> types = List.of(opts.getOrDefault("types", String.join(",", TYPES.keySet())).split(","));
+        List<String> masks = List.of(opts.getOrDefault("masks", String.join(",", MASKS.keySet())).split(","));
+        String[] threads = Arrays.stream(opts.getOrDefault("threads", "1," + Runtime.getRuntime().availableProcessors()).split(",")).distinct().toArray(String[]::new);
+        long minMillis = Long.parseLong(opts.getOrDefault("time", "1000"));
+        double tolerance = Double.parseDouble(opts.getOrDefault("tolerance", "0.1"));
+        Map<String, Double> baseline = opts.containsKey("baseline") ? readBaseline(Path.of(opts.get("baseline"))) : Map.of();
+
+        for(String size : sizes)
+            if(!SIZES.containsKey(size))
+                throw new IllegalArgumentException("unknown size \"%s\", known sizes are %s".formatted(size, SIZES.keySet()));
+        for(String type : types)
+            if(!TYPES.containsKey(type))
+                throw new IllegalArgumentException("unknown type \"%s\", known types are %s".formatted(type, TYPES.keySet()));
+        for(String mask : masks)
+            if(!MASKS.containsKey(mask))
+                throw new IllegalArgumentException("unknown mask \"%s\", known masks are %s".formatted(mask, MASKS.keySet()));
+
+        if(Boolean.parseBoolean(opts.getOrDefault("fork", "true")) && masks.size() > 1){
+            System.exit(fork(args, masks));
+            return;
+        }
+
+        PrintStream out = System.out;
+        boolean regression = false;
+        out.println(HEADER);
+
+        // one editor and pool per thread count for the whole run, instead of a new pool for every combination
+        Map<String, ImgEditor> editors = new LinkedHashMap<>();
+        for(String t : threads)
+            editors.put(t, new ImgEditor(IEAlg.CONTRAST_COLOR_MASK, Integer.parseInt(t)));
+
+        for(String size : sizes){
+            int[] dim = SIZES.get(size);
+            boolean inline = (long)dim[0] * dim[1] <= ImgEditor.INLINE_PIXELS;
+
+            for(String type : types){
+                BufferedImage img = createImage(dim, TYPES.get(type));
+
+                for(String mask : masks){
+                    for(String t : inline ? List.of(threads[0]) : List.of(threads)){
+                        String key = "%s,%s,%s,%s".formatted(mask, size, type, inline ? INLINE : t);
+                        double[] result = run(editors.get(t), MASKS.get(mask), img, minMillis);
+                        out.println(String.format(Locale.ROOT, "%s,%.2f,%.2f", key, result[0], result[1]));
+
+                        Double before = baseline.get(key);
+                        if(before != null && result[0] < before * (1 - tolerance)){
+                            System.err.println("regression in %s: %.2f MP/s, baseline %.2f MP/s".formatted(key, result[0], before));
+                            regression = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        editors.values().forEach(ImgEditor::close);
+        System.err.println("checksum %016x".formatted(sink));
+        if(regression)
+            System.exit(1);
+    }
+
+    /**
+     * runs every mask in its own JVM with the options of this one and prints their lines under one header
+     * @return the exit code, {@code 1} when any mask got slower than its baseline
+     */
+    private static int fork(String[] args, List<String> masks) throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        int exit = 0;
+        System.out.println(HEADER);
+
+        for(String mask : masks){
+            List<String> cmd = new ArrayList<>();
+            cmd.add(java);
+            cmd.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            cmd.addAll(List.of("-cp", System.getProperty("java.class.path"), IEBenchmark.class.getName()));
+            cmd.addAll(List.of(args));
+            // later options replace earlier ones in parseArgs
+            cmd.addAll(List.of("--masks", mask, "--fork", "false"));
+
+            Process p = new ProcessBuilder(cmd).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            try(BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()))){
+                for(String line; (line = in.readLine()) != null;)
+                    if(!line.equals(HEADER))
+                        System.out.println(line);
+            }
+
+            int code;
+            try{
+                code = p.waitFor();
+            } catch(InterruptedException e){
+                p.destroy();
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted while benchmarking \"%s\"".formatted(mask), e);
+            }
+
+            if(code == 1)
+                exit = 1;
+            else if(code != 0)
+                throw new IOException("benchmark of \"%s\" failed with exit code %d".formatted(mask, code));
+        }
+
+        return exit;
+    }
+
+    /**
+     * masks {@code img} until the rate is stable, then until at least {@code minMillis} passed
+     * @return {@code {megapixels per second, allocated bytes per pixel}}
+     */
+    private static double[] run(ImgEditor editor, ImgEditor.MaskFunction fn, BufferedImage img, long minMillis){
+        IEAInfo maInf = createInfo();
+        long pixels = (long)img.getWidth() * img.getHeight();
+
+        double last = 0;
+        for(int period = 0; period < MAX_WARMUP_PERIODS; period++){
+            double rate = measure(editor, fn, img, maInf, WARMUP_PERIOD_MILLIS);
+
+            if(last > 0 && Math.abs(rate - last) < last * STABLE)
+                break;
+            last = rate;
+        }
+
+        double rate = measure(editor, fn, img, maInf, minMillis);
+        return new double[]{rate * pixels / 1e6, allocation(editor, fn, img, maInf) / pixels};
+    }
+
+    /**
+     * masks {@code img} for at least {@code millis} with {@link IEMetrics} disabled, so its timers are not part of the time
+     * @return calls per second
+     */
+    private static double measure(ImgEditor editor, ImgEditor.MaskFunction fn, BufferedImage img, IEAInfo maInf, long millis){
+        IEMetrics.setEnabled(false);
+        long start = System.nanoTime(), elapsed;
+        int iterations = 0;
+
+        do {
+            BufferedImage out = editor.mask(img, fn, maInf);
+            sink = sink * 31 + out.getRGB(iterations % out.getWidth(), iterations % out.getHeight());
+            iterations++;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < millis * 1_000_000L);
+
+        return iterations / (elapsed / 1e9);
+    }
+
+    /**
+     * masks {@code img} {@value #ALLOCATION_CALLS} times with {@link IEMetrics} enabled, outside the timed calls
+     * @return allocated bytes per call
+     */
+    private static double allocation(ImgEditor editor, ImgEditor.MaskFunction fn, BufferedImage img, IEAInfo maInf){
+        IEMetrics.setEnabled(true);
+        IEMetrics.Snapshot before = IEMetrics.snapshot();
+        long allocated = allocatedBytes();
+
+        for(int i = 0; i < ALLOCATION_CALLS; i++){
+            BufferedImage out = editor.mask(img, fn, maInf);
+            sink = sink * 31 + out.getRGB(i % out.getWidth(), i % out.getHeight());
+        }
+
+        allocated = allocatedBytes() - allocated;
+        IEMetrics.Snapshot after = IEMetrics.snapshot();
+        IEMetrics.setEnabled(false);
+
+        // inline calls were already counted on this Thread, IEMetrics only adds what the workers allocated for the tiles
+        if(after.inlineCalls() == before.inlineCalls())
+            allocated += after.allocatedBytes() - before.allocatedBytes();
+
+        return (double)allocated / ALLOCATION_CALLS;
+    }
+
+    /**
+     * returns the bytes allocated by the calling Thread so far, {@code 0} when the JVM does not count them
+     */
+    private static long allocatedBytes(){
+        if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean && bean.isThreadAllocatedMemorySupported())
+            return bean.getCurrentThreadAllocatedBytes();
+
+        return 0;
+    }
+
+    private static BufferedImage createImage(int[] size, int type){
+        BufferedImage img = new BufferedImage(size[0], size[1], type);
+        Random random = new Random(size[0] * 31L + type);
+        int[] row = new int[size[0]];
+
+        for(int y = 0; y < size[1]; y++){
+            for(int x = 0; x < row.length; x++)
+                row[x] = random.nextInt();
+
+            img.setRGB(0, y, row.length, 1, row, 0, row.length);
+        }
+
+        return img;
+    }
+
+    private static IEAInfo createInfo(){
+        IEAInfo maInf = new IEAInfo();
+        maInf.threshold = 127;
+        maInf.addColors(Color.WHITE, Color.BLACK);
+        return maInf;
+    }
+
+    private static Map<String, Double> readBaseline(Path file) throws IOException {
+        Map<String, Double> baseline = new HashMap<>();
+
+        for(String line : Files.readAllLines(file)){
+            if(line.isBlank() || line.equals(HEADER))
+                continue;
+
+            String[] cols = line.split(",");
+            baseline.put(String.join(",", cols[0], cols[1], cols[2], cols[3]), Double.parseDouble(cols[4]));
+        }
+
+        return baseline;
+    }
+
+    private static Map<String, String> parseArgs(String[] args){
+        Map<String, String> opts = new HashMap<>();
+
+        if(args.length % 2 != 0)
+            throw new IllegalArgumentException("option \"%s\" has no value".formatted(args[args.length - 1]));
+
+        for(int i = 0; i < args.length; i += 2){
+            if(!args[i].startsWith("--"))
+                throw new IllegalArgumentException("expected an option like --sizes but got \"%s\"".formatted(args[i]));
+
+            opts.put(args[i].substring(2), args[i + 1]);
+        }
+
+        return opts;
+    }
+}
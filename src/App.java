@@ -12,7 +12,7 @@ public class App{
         Fraction<?,?> frac1 = new Fraction<>(1,10);
         double d1 = frac1.doubleValue();
 
-        Arrays.sort(fracArr);
+        Fraction.sort(fracArr);
 
         System.out.println(frac1.add(new Fraction<>(20,2)).toFractionString());        
         System.out.println(d1);
@@ -29,6 +29,31 @@ public class IEAInfo {
         }
     }
 
+    /**
+     * returns a copy for one masking run, with {@code colors} copied into an unmodifiable List
+     *
+     * <p>the Algorithms only get copies, so a gui can keep changing this object while an image is masked. {@link ImgEditor}
+     * hands every tile its own copy, so a function writing to its {@code IEAInfo} never changes the one of another Thread.
+     * The threshold is copied as it is, like a direct call of an Algorithm sees it.
+     * Will throw a {@code IllegalArgumentException} when {@code colors} holds {@code null}</p>
+     * @return {@link IEAInfo}
+     */
+    public IEAInfo snapshot(){
+        Color[] copiedColors = colors.toArray(new Color[0]);
+        for(Color c : copiedColors)
+            if(c == null)
+                throw new IllegalArgumentException("colors cannot contain null");
+
+        IEAInfo copy = new IEAInfo();
+        copy.threshold = threshold;
+        copy.threshold_min = threshold_min;
+        copy.threshold_max = threshold_max;
+        copy.colors = List.of(copiedColors);
+        copy.b_threshold = b_threshold;
+        copy.debug = debug;
+        return copy;
+    }
+
     public void falseAll(){
         b_threshold = false;
     }
@@ -1,49 +1,62 @@
 package lenger.imageedit;
 
 import java.awt.image.BufferedImage;
-import java.awt.Color;
 
 /**
  * A collection of predefined Algorhithms
+ * 
+ * <p>all Algorithms work on the pixel array of an {@link IERaster} and walk it row by row,
+ * the per pixel Algorithms are single pass {@link IEPipeline}s</p>
+ * <p>the {@code _MASK} constants describe every Algorithm for {@link ImgEditor}, they tell it which Algorithm
+ * {@link ImgEditor.MaskFunction#needsThreshold() needs a threshold} before it runs, the Algorithms never write to
+ * {@link IEAInfo}. A method used directly, as in {@code ImgEditor.setMaskFunction(IEAlg::redColorMask)}, does not
+ * {@link ImgEditor.MaskFunction#declaresThreshold() declare} its need and leaves {@link IEAInfo#b_threshold} unchanged</p>
  * @author Lenardt Gerhardts
  * @since 17.0.1
  */
 public class IEAlg {
-    public static BufferedImage contrastMask(BufferedImage img, IEAInfo maInf){
-        BufferedImage copyImg = new BufferedImage(img.getWidth(),img.getHeight(),BufferedImage.TYPE_INT_ARGB);
-        maInf.b_threshold = false;
+    private static final IEPipeline PIXEL_STRENGTH = new IEPipeline(IEPipeline.threshold());
+    private static final IEPipeline CONTRAST_COLOR = new IEPipeline(IEPipeline.average(IEPipeline.threshold(), null));
+    private static final IEPipeline RED = new IEPipeline(IEPipeline.channel(IEPipeline.RED));
+    private static final IEPipeline GREEN = new IEPipeline(IEPipeline.channel(IEPipeline.GREEN));
+    private static final IEPipeline BLUE = new IEPipeline(IEPipeline.channel(IEPipeline.BLUE));
+    private static final IEPipeline RED_GREEN = new IEPipeline(IEPipeline.average(IEPipeline.channel(IEPipeline.GREEN), IEPipeline.channel(IEPipeline.RED)));
+    private static final IEPipeline GREEN_BLUE = new IEPipeline(IEPipeline.average(IEPipeline.channel(IEPipeline.GREEN), IEPipeline.channel(IEPipeline.BLUE)));
+    private static final IEPipeline RED_BLUE = new IEPipeline(IEPipeline.average(IEPipeline.channel(IEPipeline.BLUE), IEPipeline.channel(IEPipeline.RED)));
+    private static final IEPipeline COLORSTRENGTH = new IEPipeline(IEPipeline.recolor());
 
-        for(int x = 0; x < img.getWidth(); x++){
-            for(int y = 0; y < img.getHeight(); y++){
-                int pd = (int)(IPUtil.pixelDifference(img, x, y));
-                pd *= (int)IPUtil.increaseIntensity(pd);
-                //System.out.println(pd);
-                copyImg.setRGB(x, y, new Color(pd,pd,pd,pd).getRGB());
-            }
-        }
+    /**
+     * {@link #contrastMask(BufferedImage, IEAInfo) contrastMask} for {@link ImgEditor}, it reads the direct neighbours of every pixel
+     */
+    public static final ImgEditor.MaskFunction CONTRAST_MASK = ImgEditor.MaskFunction.of(IEAlg::contrastMask, 1, false);
+    public static final ImgEditor.MaskFunction PIXEL_STRENGTH_MASK = ImgEditor.MaskFunction.of(IEAlg::pixelStrengthAlg, 0, true);
+    public static final ImgEditor.MaskFunction CONTRAST_COLOR_MASK = ImgEditor.MaskFunction.of(IEAlg::contrastMaskColor, 0, true);
+    public static final ImgEditor.MaskFunction RED_MASK = ImgEditor.MaskFunction.of(IEAlg::redColorMask, 0, false);
+    public static final ImgEditor.MaskFunction GREEN_MASK = ImgEditor.MaskFunction.of(IEAlg::greenColorMask, 0, false);
+    public static final ImgEditor.MaskFunction BLUE_MASK = ImgEditor.MaskFunction.of(IEAlg::blueColorMask, 0, false);
+    public static final ImgEditor.MaskFunction RG_MASK = ImgEditor.MaskFunction.of(IEAlg::rgColorMask, 0, false);
+    public static final ImgEditor.MaskFunction GB_MASK = ImgEditor.MaskFunction.of(IEAlg::gbColorMask, 0, false);
+    public static final ImgEditor.MaskFunction RB_MASK = ImgEditor.MaskFunction.of(IEAlg::rbColorMask, 0, false);
+    public static final ImgEditor.MaskFunction COLORSTRENGTH_MASK = ImgEditor.MaskFunction.of(IEAlg::colorstrengthChangeColor, 0, true);
 
-        return copyImg;
+    /**
+     * average color difference of every pixel to its direct neighbours, see {@link IEEdge.Operator#NEIGHBOUR}
+     *
+     * <p>as {@code IEAlg::contrastMask} the method has no {@link ImgEditor.MaskFunction#haloRadius() haloRadius}, so
+     * {@link ImgEditor} masks the border pixels of every tile without their neighbours and leaves seams between the tiles</p>
+     * @param img
+     * @param maInf
+     * @return {@link java.awt.image.BufferedImage}
+     * @deprecated use {@link #CONTRAST_MASK}, which reads the neighbours across tiles and masks a single image with
+     * {@code CONTRAST_MASK.masker(img, maInf)}
+     */
+    @Deprecated
+    public static BufferedImage contrastMask(BufferedImage img, IEAInfo maInf){
+        return IEEdge.NEIGHBOUR.masker(img, maInf);
     }
 
     public static BufferedImage pixelStrengthAlg(BufferedImage img, IEAInfo maInf){
-        maInf.b_threshold = true;
-        BufferedImage copyImg = new BufferedImage(img.getWidth(),img.getHeight(),BufferedImage.TYPE_INT_ARGB);
-        boolean[][] color = new boolean[img.getWidth()][img.getHeight()];
-        Color temp = Color.BLACK;
-
-        for(int x = 0; x < img.getWidth(); x++){
-            for(int y = 0; y < img.getHeight(); y++){
-                temp = IPUtil.rgbToColor(img.getRGB(x, y));
-                color[x][y] = false;
-
-                if((temp.getRed() + temp.getBlue() + temp.getGreen()) / 3 > maInf.threshold)
-                    color[x][y] = true;
-
-                copyImg.setRGB(x, y, color[x][y] ? new Color(255,255,255,0).getRGB() : new Color(0,0,0).getRGB());
-            } 
-        }      
-
-        return copyImg;
+        return PIXEL_STRENGTH.masker(img, maInf);
     }
 
     /**
@@ -53,87 +66,49 @@ public class IEAlg {
      * @return
      */
     public static BufferedImage contrastMaskColor(BufferedImage img, IEAInfo maInf){
-        maInf.b_threshold = true;
-        return IPUtil.imgAvg(pixelStrengthAlg(img, maInf), img);
+        return CONTRAST_COLOR.masker(img, maInf);
     }
 
     public static BufferedImage redColorMask(BufferedImage img, IEAInfo maInf){
-        maInf.b_threshold = false;
-        BufferedImage copyImg = new BufferedImage(img.getWidth(),img.getHeight(),BufferedImage.TYPE_INT_ARGB);
-        Color temp = Color.BLACK;
-        for(int x = 0; x < img.getWidth(); x++){
-            for(int y = 0; y < img.getHeight(); y++){
-                temp = IPUtil.rgbToColor(img.getRGB(x,y));
-                copyImg.setRGB(x, y, new Color(temp.getRed(),0,0,temp.getAlpha()).getRGB());
-            } 
-        }      
-
-        return copyImg;
+        return RED.masker(img, maInf);
     }
 
     public static BufferedImage blueColorMask(BufferedImage img, IEAInfo maInf){
-        maInf.b_threshold = false;
-        BufferedImage copyImg = new BufferedImage(img.getWidth(),img.getHeight(),BufferedImage.TYPE_INT_ARGB);
-        Color temp = Color.BLACK;
-        for(int x = 0; x < img.getWidth(); x++){
-            for(int y = 0; y < img.getHeight(); y++){
-                temp = IPUtil.rgbToColor(img.getRGB(x,y));
-                copyImg.setRGB(x, y, new Color(0,0,temp.getBlue(),temp.getAlpha()).getRGB());
-            } 
-        }      
-
-        return copyImg;
+        return BLUE.masker(img, maInf);
     }
 
     public static BufferedImage greenColorMask(BufferedImage img, IEAInfo maInf){
-        maInf.b_threshold = false;
-        BufferedImage copyImg = new BufferedImage(img.getWidth(),img.getHeight(),BufferedImage.TYPE_INT_ARGB);
-        Color temp = Color.BLACK;
-        for(int x = 0; x < img.getWidth(); x++){
-            for(int y = 0; y < img.getHeight(); y++){
-                temp = IPUtil.rgbToColor(img.getRGB(x,y));
-                copyImg.setRGB(x, y, new Color(0,temp.getGreen(),0,temp.getAlpha()).getRGB());
-            } 
-        }      
-
-        return copyImg;
+        return GREEN.masker(img, maInf);
     }
 
     public static BufferedImage rgColorMask(BufferedImage img, IEAInfo maInf){
-        return IPUtil.imgAvg(greenColorMask(img, maInf),redColorMask(img, maInf));
+        return RED_GREEN.masker(img, maInf);
     }
 
     public static BufferedImage gbColorMask(BufferedImage img, IEAInfo maInf){
-        return IPUtil.imgAvg(greenColorMask(img, maInf),blueColorMask(img, maInf));
+        return GREEN_BLUE.masker(img, maInf);
     }
 
     public static BufferedImage rbColorMask(BufferedImage img, IEAInfo maInf){
-        return IPUtil.imgAvg(blueColorMask(img, maInf),redColorMask(img, maInf));
+        return RED_BLUE.masker(img, maInf);
     }
 
-    public static BufferedImage colorstrengthChangeColor(BufferedImage pieceImg, IEAInfo info){
-        info.b_threshold = true;
-        BufferedImage copyImg = new BufferedImage(pieceImg.getWidth(),pieceImg.getHeight(),BufferedImage.TYPE_INT_ARGB);
-        Color[][] color = new Color[pieceImg.getWidth()][pieceImg.getHeight()];
-
-        for(int x = 0; x < copyImg.getWidth(); x++){
-            for(int y = 0; y < copyImg.getHeight(); y++){
-                if(info.debug)
-                    copyImg.setRGB(x,y,Color.PINK.getRGB());
-                else{
-                    color[x][y] = new Color(pieceImg.getRGB(x, y),true);
-                    int alpha = color[x][y].getAlpha();
-    
-                    if((color[x][y].getRed() + color[x][y].getBlue() + color[x][y].getGreen()) / 3 > info.threshold)
-                        color[x][y] = info.colors.get(0);
-                    else
-                        color[x][y] = info.colors.get(1);
-    
-                    copyImg.setRGB(x,y,IPUtil.changeColorAlpha(color[x][y], alpha).getRGB());
-                }
-            } 
-        }      
+    /**
+     * returns the Pipeline behind {@code fn} when the output of every pixel only depends on the pixel itself and on
+     * whether {@code (r + g + b) / 3} of the unchanged pixel is above the threshold, {@code null} for every other function
+     */
+    static IEPipeline luminancePipeline(ImgEditor.MaskFunction fn){
+        if(fn == PIXEL_STRENGTH_MASK)
+            return PIXEL_STRENGTH;
+        if(fn == CONTRAST_COLOR_MASK)
+            return CONTRAST_COLOR;
+        if(fn == COLORSTRENGTH_MASK)
+            return COLORSTRENGTH;
+
+        return null;
+    }
 
-        return copyImg;
+    public static BufferedImage colorstrengthChangeColor(BufferedImage pieceImg, IEAInfo info){
+        return COLORSTRENGTH.masker(pieceImg, info);
     }
 }
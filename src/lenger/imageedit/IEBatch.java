@@ -0,0 +1,342 @@
+package lenger.imageedit;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+
+/**
+ * masks every image of a directory and writes the results into another directory
+ *
+ * <p>decoding, masking and encoding run on three separate pools connected by bounded queues. A stage that is ahead blocks
+ * once the queue to the next stage is full, so at most {@link #setQueueCapacity(int) queueCapacity} decoded images wait
+ * in memory per queue, and the files per second are limited by the slowest stage instead of the sum of all three.</p>
+ * <pre>{@code
+ * IEBatch.Stats stats = new IEBatch(Path.of("in"), Path.of("out"), IEConvolve.gaussian(2), IEAlg.PIXEL_STRENGTH_MASK).run(maInf);
+ * System.out.println(stats);
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEBatch {
+    public static final String DEFAULT_FORMAT = "png";
+    public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+    private static final Job POISON = new Job(null, null);
+
+    private final Path inputDir, outputDir;
+    private final ImgEditor.MaskFunction[] chain;
+
+    private int decodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int maskThreads = Runtime.getRuntime().availableProcessors();
+    private int encodeThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private String format = DEFAULT_FORMAT;
+
+    private record Job(Path file, BufferedImage img){
+    }
+
+    /**
+     * throughput of one stage, {@code busyNanos} is the time all its Threads spent working, without waiting on the queues
+     */
+    public record StageStats(String name, int threads, long items, long busyNanos){
+        /**
+         * returns how many files per second this stage could handle if it never had to wait for the others
+         * @return double
+         */
+        public double itemsPerSecond(){
+            return busyNanos == 0 ? 0 : items * threads * 1e9 / busyNanos;
+        }
+
+        @Override
+        public String toString(){
+            return "%s: %d files on %d threads, %.1f files/s".formatted(name, items, threads, itemsPerSecond());
+        }
+    }
+
+    /**
+     * result of {@link IEBatch#run(IEAInfo) run}, {@code failures} holds the files that could not be read, masked or written,
+     * together with what was thrown, {@code Error}s like an {@code OutOfMemoryError} on a large image included
+     */
+    public record Stats(StageStats decode, StageStats mask, StageStats encode, long wallNanos, Map<Path, Throwable> failures){
+        /**
+         * returns the files written per second
+         * @return double
+         */
+        public double filesPerSecond(){
+            return wallNanos == 0 ? 0 : encode.items() * 1e9 / wallNanos;
+        }
+
+        @Override
+        public String toString(){
+            return "%s%n%s%n%s%ntotal: %.1f files/s, %d failed".formatted(decode, mask, encode, filesPerSecond(), failures.size());
+        }
+    }
+
+    /**
+     * @param inputDir directory whose images are read, files without an {@link ImageIO} reader are skipped
+     * @param outputDir directory the masked images are written to, with the same name and the extension of {@link #setFormat(String) setFormat}.
+     * When several inputs only differ in their extension the first one in sorted order is written and the others are reported as failures
+     * @param chain the masks applied one after the other to every image
+     */
+    public IEBatch(Path inputDir, Path outputDir, ImgEditor.MaskFunction... chain){
+        if(chain.length == 0)
+            throw new IllegalArgumentException("a batch needs at least one mask function");
+
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.chain = chain.clone();
+    }
+
+    /**
+     * sets the Threads of the decode, mask and encode stage, decoding and encoding default to half the cores and masking to all cores
+     *
+     * <p>will throw a {@code IllegalArgumentException} when a count is smaller than 1</p>
+     * @param decode
+     * @param mask
+     * @param encode
+     */
+    public void setThreads(int decode, int mask, int encode){
+        if(decode < 1 || mask < 1 || encode < 1)
+            throw new IllegalArgumentException("every stage needs at least 1 thread but got %d, %d, %d".formatted(decode, mask, encode));
+
+        decodeThreads = decode;
+        maskThreads = mask;
+        encodeThreads = encode;
+    }
+
+    /**
+     * sets how many images can wait between two stages, defaults to {@value #DEFAULT_QUEUE_CAPACITY}
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code capacity} is smaller than 1</p>
+     * @param capacity
+     */
+    public void setQueueCapacity(int capacity){
+        if(capacity < 1)
+            throw new IllegalArgumentException("queue capacity has to be at least 1 but was %d".formatted(capacity));
+
+        queueCapacity = capacity;
+    }
+
+    /**
+     * sets the {@link ImageIO} format name the results are written in, defaults to {@value #DEFAULT_FORMAT}
+     *
+     * <p>results the format cannot store, like {@code TYPE_INT_ARGB} masks as {@code jpg}, are written without their alpha channel</p>
+     * <p>will throw a {@code IllegalArgumentException} when no writer for {@code format} is installed</p>
+     * @param format
+     */
+    public void setFormat(String format){
+        if(!Arrays.asList(ImageIO.getWriterFormatNames()).contains(format))
+            throw new IllegalArgumentException("no ImageIO writer for format \"%s\"".formatted(format));
+
+        this.format = format;
+    }
+
+    /**
+     * masks all images of the input directory with a {@link IEAInfo#snapshot() snapshot} of {@code maInf}, blocking until every file is written
+     * @param maInf
+     * @return {@link Stats}
+     * @throws IOException when the input directory cannot be listed or the output directory cannot be created
+     */
+    public Stats run(IEAInfo maInf) throws IOException {
+        IEAInfo info = maInf.snapshot();
+        Files.createDirectories(outputDir);
+
+        Set<String> suffixes = Arrays.stream(ImageIO.getReaderFileSuffixes()).map(String::toLowerCase).collect(Collectors.toSet());
+        List<Path> listed;
+        try(Stream<Path> listing = Files.list(inputDir)){
+            listed = listing.filter(Files::isRegularFile).filter(p -> suffixes.contains(extension(p))).sorted().toList();
+        }
+
+        Map<Path, Throwable> failures = new ConcurrentHashMap<>();
+        ConcurrentLinkedQueue<Path> files = new ConcurrentLinkedQueue<>();
+        Set<String> targets = new HashSet<>();
+        for(Path file : listed){
+            // a.png and a.jpg would both be written to a.<format>
+            if(targets.add(baseName(file)))
+                files.add(file);
+            else
+                failures.put(file, new IOException("\"%s\" has the same output name as another input".formatted(file)));
+        }
+
+        BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Job> masked = new ArrayBlockingQueue<>(queueCapacity);
+        LongAdder[] items = {new LongAdder(), new LongAdder(), new LongAdder()};
+        LongAdder[] busy = {new LongAdder(), new LongAdder(), new LongAdder()};
+
+        ExecutorService decodePool = pool("decode", decodeThreads);
+        ExecutorService maskPool = pool("mask", maskThreads);
+        ExecutorService encodePool = pool("encode", encodeThreads);
+        long start = System.nanoTime();
+
+        try{
+            List<Future<?>> decoders = start(decodePool, decodeThreads, () -> {
+                Path file;
+                while((file = files.poll()) != null){
+                    long t = System.nanoTime();
+                    try{
+                        BufferedImage img = ImageIO.read(file.toFile());
+                        if(img == null)
+                            throw new IOException("no ImageIO reader for \"%s\"".formatted(file));
+
+                        done(items[0], busy[0], t);
+                        decoded.put(new Job(file, img));
+                    } catch(InterruptedException e){
+                        throw e;
+                    } catch(Throwable e){
+                        // a worker that dies would leave the other stages blocked on the queues forever
+                        failures.put(file, e);
+                    }
+                }
+                return null;
+            });
+
+            List<Future<?>> maskers = start(maskPool, maskThreads, () -> {
+                Job job;
+                while((job = decoded.take()) != POISON){
+                    long t = System.nanoTime();
+                    try{
+                        BufferedImage img = job.img();
+                        for(ImgEditor.MaskFunction fn : chain)
+                            img = fn.masker(img, info.snapshot());
+
+                        done(items[1], busy[1], t);
+                        masked.put(new Job(job.file(), img));
+                    } catch(InterruptedException e){
+                        throw e;
+                    } catch(Throwable e){
+                        failures.put(job.file(), e);
+                    }
+                }
+                return null;
+            });
+
+            List<Future<?>> encoders = start(encodePool, encodeThreads, () -> {
+                Job job;
+                while((job = masked.take()) != POISON){
+                    long t = System.nanoTime();
+                    try{
+                        Path target = outputDir.resolve(baseName(job.file()) + "." + format);
+                        if(!ImageIO.write(writable(job.img()), format, target.toFile()))
+                            throw new IOException("ImageIO cannot write %s as \"%s\"".formatted(job.img(), format));
+
+                        done(items[2], busy[2], t);
+                    } catch(Throwable e){
+                        failures.put(job.file(), e);
+                    }
+                }
+                return null;
+            });
+
+            // every stage stops its successor once all of its own Threads are done
+            await(decoders);
+            for(int i = 0; i < maskThreads; i++)
+                decoded.put(POISON);
+            await(maskers);
+            for(int i = 0; i < encodeThreads; i++)
+                masked.put(POISON);
+            await(encoders);
+        } catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("batch of \"%s\" was interrupted".formatted(inputDir), e);
+        } finally {
+            decodePool.shutdownNow();
+            maskPool.shutdownNow();
+            encodePool.shutdownNow();
+        }
+
+        long wall = System.nanoTime() - start;
+        return new Stats(
+                new StageStats("decode", decodeThreads, items[0].sum(), busy[0].sum()),
+                new StageStats("mask", maskThreads, items[1].sum(), busy[1].sum()),
+                new StageStats("encode", encodeThreads, items[2].sum(), busy[2].sum()),
+                wall, Collections.unmodifiableMap(failures));
+    }
+
+    /**
+     * returns {@code img}, or a {@code TYPE_INT_RGB} copy without alpha when no writer for the format takes {@code img}
+     */
+    private BufferedImage writable(BufferedImage img){
+        if(ImageIO.getImageWriters(ImageTypeSpecifier.createFromRenderedImage(img), format).hasNext())
+            return img;
+
+        IERaster src = IERaster.of(img);
+        BufferedImage rgb = new BufferedImage(src.width, src.height, BufferedImage.TYPE_INT_RGB);
+        rgb.setRGB(0, 0, src.width, src.height, src.data, src.offset, src.stride);
+        return rgb;
+    }
+
+    private static void done(LongAdder items, LongAdder busy, long started){
+        busy.add(System.nanoTime() - started);
+        items.increment();
+    }
+
+    private static ExecutorService pool(String stage, int threads){
+        AtomicInteger count = new AtomicInteger();
+
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "IEBatch-%s-%d".formatted(stage, count.incrementAndGet()));
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static List<Future<?>> start(ExecutorService pool, int threads, Callable<Void> worker){
+        List<Future<?>> futures = new ArrayList<>();
+
+        for(int i = 0; i < threads; i++)
+            futures.add(pool.submit(worker));
+
+        return futures;
+    }
+
+    private static void await(List<Future<?>> futures) throws InterruptedException {
+        for(Future<?> f : futures){
+            try{
+                f.get();
+            } catch(ExecutionException e){
+                if(e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException)e.getCause();
+
+                throw new IllegalStateException("batch stage failed", e.getCause());
+            }
+        }
+    }
+
+    private static String extension(Path file){
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+    }
+
+    private static String baseName(Path file){
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+}
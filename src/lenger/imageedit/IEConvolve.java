@@ -0,0 +1,375 @@
+package lenger.imageedit;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.Kernel;
+import java.util.Arrays;
+
+/**
+ * Convolution and blur {@link ImgEditor.MaskFunction}s, filtering the alpha, red, green and blue channel of every pixel
+ *
+ * <p>the image is processed one row at a time: only the rows the kernel covers are kept, in a ring of
+ * {@code width * 4} values each, so the working set stays in the cache no matter how high the image is.
+ * Pixels outside the image are taken from the nearest border pixel, the {@link #haloRadius() haloRadius} is the kernel
+ * radius so tiles from {@link ImgEditor} give the same result as the whole image.</p>
+ * <pre>{@code
+ * ImgEditor.setMaskFunction(IEConvolve.gaussian(2.5));
+ * }</pre>
+ * <p>for large radii set a {@link ImgEditor#setTileSize(int, int) tile size} well above the radius, every tile is masked together with its halo</p>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public abstract class IEConvolve implements ImgEditor.MaskFunction {
+    /**
+     * the largest radius of {@link #box(int) box}, the running sums of bigger boxes would not fit into an {@code int}
+     */
+    public static final int MAX_BOX_RADIUS = 1024;
+
+    private final int radius;
+
+    private IEConvolve(int radius){
+        this.radius = radius;
+    }
+
+    @Override
+    public boolean needsThreshold(){
+        return false;
+    }
+
+    @Override
+    public boolean declaresThreshold(){
+        return true;
+    }
+
+    @Override
+    public int haloRadius(){
+        return radius;
+    }
+
+    /**
+     * convolves with {@code kernel}, pixel {@code (x, y)} becomes the sum of {@code kernel[i, j] * (x + i - xOrigin, y + j - yOrigin)}
+     * @param kernel
+     * @return {@link IEConvolve}
+     */
+    public static IEConvolve kernel(Kernel kernel){
+        return new Kernel2D(kernel);
+    }
+
+    /**
+     * convolves every row with {@code horizontal} and every column of the result with {@code vertical}, both have to have an odd length
+     * and are centered on the pixel
+     *
+     * <p>will throw a {@code IllegalArgumentException} when a length is even</p>
+     * @param horizontal
+     * @param vertical
+     * @return {@link IEConvolve}
+     */
+    public static IEConvolve separable(float[] horizontal, float[] vertical){
+        if(horizontal.length % 2 == 0 || vertical.length % 2 == 0)
+            throw new IllegalArgumentException("separable kernels need an odd length but were %d and %d".formatted(horizontal.length, vertical.length));
+
+        return new Separable(horizontal.clone(), vertical.clone());
+    }
+
+    /**
+     * gaussian blur, the kernel reaches {@code 3 * sigma} pixels in every direction
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code sigma} is not positive</p>
+     * @param sigma
+     * @return {@link IEConvolve}
+     */
+    public static IEConvolve gaussian(double sigma){
+        if(!(sigma > 0))
+            throw new IllegalArgumentException("sigma has to be positive but was %f".formatted(sigma));
+
+        int r = (int)Math.ceil(3 * sigma);
+        float[] weights = new float[2 * r + 1];
+        double sum = 0;
+
+        for(int i = -r; i <= r; i++)
+            sum += Math.exp(-(i * i) / (2 * sigma * sigma));
+        for(int i = -r; i <= r; i++)
+            weights[i + r] = (float)(Math.exp(-(i * i) / (2 * sigma * sigma)) / sum);
+
+        return new Separable(weights, weights);
+    }
+
+    /**
+     * averages every pixel with the {@code (2 * radius + 1)^2} pixels around it using running sums, so the cost per pixel does not depend on {@code radius}
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code radius} is negative or larger than {@link #MAX_BOX_RADIUS}</p>
+     * @param radius
+     * @return {@link IEConvolve}
+     */
+    public static IEConvolve box(int radius){
+        if(radius < 0 || radius > MAX_BOX_RADIUS)
+            throw new IllegalArgumentException("box radius has to be between 0 and %d but was %d".formatted(MAX_BOX_RADIUS, radius));
+
+        return new Box(radius);
+    }
+
+    /**
+     * approximates {@link #gaussian(double) gaussian} with three {@link #box(int) box} blurs, for large {@code sigma} where the exact kernel gets slow
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code sigma} is not positive</p>
+     * @param sigma
+     * @return {@link IEConvolve}
+     */
+    public static IEConvolve boxGaussian(double sigma){
+        if(!(sigma > 0))
+            throw new IllegalArgumentException("sigma has to be positive but was %f".formatted(sigma));
+
+        // box widths whose variances add up to sigma^2
+        int passes = 3;
+        int lower = (int)Math.floor(Math.sqrt(12 * sigma * sigma / passes + 1));
+        if(lower % 2 == 0)
+            lower--;
+        int lowerPasses = (int)Math.round((12 * sigma * sigma - passes * lower * lower - 4 * passes * lower - 3 * passes) / (-4.0 * lower - 4));
+
+        Box[] boxes = new Box[passes];
+        for(int i = 0; i < passes; i++)
+            boxes[i] = (Box)box(((i < lowerPasses ? lower : lower + 2) - 1) / 2);
+
+        return new Chain(boxes);
+    }
+
+    static int clamp(int v, int max){
+        return Math.max(0, Math.min(max, v));
+    }
+
+    /**
+     * writes the channels of row {@code y} of {@code in} as {@code a, r, g, b} floats into {@code dst}, with {@code left} and {@code right}
+     * copies of the border pixels on each side
+     */
+    static void loadPadded(IERaster in, int y, int left, int right, float[] dst){
+        int i = in.row(clamp(y, in.height - 1));
+
+        for(int x = -left; x < in.width + right; x++){
+            int p = in.data[i + clamp(x, in.width - 1)];
+            int d = (x + left) * 4;
+            dst[d] = p >>> 24;
+            dst[d + 1] = (p >> 16) & 0xFF;
+            dst[d + 2] = (p >> 8) & 0xFF;
+            dst[d + 3] = p & 0xFF;
+        }
+    }
+
+    /**
+     * packs the {@code a, r, g, b} floats of {@code src} rounded and clamped into row {@code y} of {@code out}
+     */
+    static void store(float[] src, IERaster out, int y){
+        int o = out.row(y);
+
+        for(int x = 0; x < out.width; x++){
+            int s = x * 4;
+            out.data[o + x] = IERaster.argb(channel(src[s]), channel(src[s + 1]), channel(src[s + 2]), channel(src[s + 3]));
+        }
+    }
+
+    static int channel(float v){
+        return Math.max(0, Math.min(255, Math.round(v)));
+    }
+
+    private static final class Kernel2D extends IEConvolve{
+        private final float[] weights;
+        private final int kWidth, kHeight, xOrigin, yOrigin;
+
+        Kernel2D(Kernel kernel){
+            super(Math.max(Math.max(kernel.getXOrigin(), kernel.getWidth() - 1 - kernel.getXOrigin()),
+                    Math.max(kernel.getYOrigin(), kernel.getHeight() - 1 - kernel.getYOrigin())));
+            this.weights = kernel.getKernelData(null);
+            this.kWidth = kernel.getWidth();
+            this.kHeight = kernel.getHeight();
+            this.xOrigin = kernel.getXOrigin();
+            this.yOrigin = kernel.getYOrigin();
+        }
+
+        @Override
+        public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+            IERaster in = IERaster.of(img);
+            IERaster out = IERaster.create(in.width, in.height);
+            int len = in.width * 4;
+            float[][] ring = new float[kHeight][(in.width + kWidth - 1) * 4];
+            float[] acc = new float[len];
+
+            // ring slot of source row yy is floorMod(yy, kHeight)
+            for(int yy = -yOrigin; yy < kHeight - 1 - yOrigin; yy++)
+                loadPadded(in, yy, xOrigin, kWidth - 1 - xOrigin, ring[Math.floorMod(yy, kHeight)]);
+
+            for(int y = 0; y < in.height; y++){
+                int newest = y + kHeight - 1 - yOrigin;
+                loadPadded(in, newest, xOrigin, kWidth - 1 - xOrigin, ring[Math.floorMod(newest, kHeight)]);
+
+                Arrays.fill(acc, 0f);
+                for(int j = 0; j < kHeight; j++){
+                    float[] row = ring[Math.floorMod(y + j - yOrigin, kHeight)];
+                    for(int i = 0; i < kWidth; i++){
+                        float w = weights[j * kWidth + i];
+                        if(w == 0)
+                            continue;
+                        int shift = i * 4;
+                        for(int k = 0; k < len; k++)
+                            acc[k] += w * row[shift + k];
+                    }
+                }
+
+                store(acc, out, y);
+            }
+
+            return out.image;
+        }
+    }
+
+    private static final class Separable extends IEConvolve{
+        private final float[] horizontal, vertical;
+
+        Separable(float[] horizontal, float[] vertical){
+            super(Math.max(horizontal.length, vertical.length) / 2);
+            this.horizontal = horizontal;
+            this.vertical = vertical;
+        }
+
+        @Override
+        public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+            IERaster in = IERaster.of(img);
+            IERaster out = IERaster.create(in.width, in.height);
+            int rh = horizontal.length / 2, rv = vertical.length / 2;
+            int len = in.width * 4;
+            float[] padded = new float[(in.width + 2 * rh) * 4];
+            float[][] ring = new float[vertical.length][len];
+            float[] acc = new float[len];
+
+            // ring slot of the horizontally filtered source row yy is floorMod(yy, vertical.length)
+            for(int yy = -rv; yy < rv; yy++)
+                filterRow(in, yy, rh, padded, ring[Math.floorMod(yy, vertical.length)]);
+
+            for(int y = 0; y < in.height; y++){
+                filterRow(in, y + rv, rh, padded, ring[Math.floorMod(y + rv, vertical.length)]);
+
+                Arrays.fill(acc, 0f);
+                for(int j = 0; j < vertical.length; j++){
+                    float w = vertical[j];
+                    float[] row = ring[Math.floorMod(y - rv + j, vertical.length)];
+                    for(int k = 0; k < len; k++)
+                        acc[k] += w * row[k];
+                }
+
+                store(acc, out, y);
+            }
+
+            return out.image;
+        }
+
+        private void filterRow(IERaster in, int y, int rh, float[] padded, float[] dst){
+            loadPadded(in, y, rh, rh, padded);
+            Arrays.fill(dst, 0f);
+
+            for(int i = 0; i < horizontal.length; i++){
+                float w = horizontal[i];
+                int shift = i * 4;
+                for(int k = 0; k < dst.length; k++)
+                    dst[k] += w * padded[shift + k];
+            }
+        }
+    }
+
+    private static final class Box extends IEConvolve{
+        private final int r;
+
+        Box(int radius){
+            super(radius);
+            this.r = radius;
+        }
+
+        @Override
+        public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+            IERaster in = IERaster.of(img);
+            IERaster out = IERaster.create(in.width, in.height);
+            int len = in.width * 4;
+            int[] columns = new int[len], added = new int[len], removed = new int[len];
+            float scale = 1f / ((2 * r + 1) * (2 * r + 1));
+
+            // column sums of the rows -r to r, the rows above the image are copies of row 0
+            rowSums(in, 0, added);
+            for(int k = 0; k < len; k++)
+                columns[k] = added[k] * (r + 1);
+            for(int yy = 1; yy <= r; yy++){
+                rowSums(in, clamp(yy, in.height - 1), added);
+                for(int k = 0; k < len; k++)
+                    columns[k] += added[k];
+            }
+
+            for(int y = 0; y < in.height; y++){
+                int o = out.row(y);
+                for(int x = 0; x < in.width; x++){
+                    int s = x * 4;
+                    out.data[o + x] = IERaster.argb((int)(columns[s] * scale + 0.5f), (int)(columns[s + 1] * scale + 0.5f),
+                            (int)(columns[s + 2] * scale + 0.5f), (int)(columns[s + 3] * scale + 0.5f));
+                }
+
+                int add = clamp(y + r + 1, in.height - 1), remove = clamp(y - r, in.height - 1);
+                if(y + 1 == in.height || add == remove)
+                    continue;
+
+                rowSums(in, add, added);
+                rowSums(in, remove, removed);
+                for(int k = 0; k < len; k++)
+                    columns[k] += added[k] - removed[k];
+            }
+
+            return out.image;
+        }
+
+        /**
+         * writes the sums of the {@code 2 * r + 1} pixels around every pixel of row {@code y} as {@code a, r, g, b} into {@code dst}
+         */
+        private void rowSums(IERaster in, int y, int[] dst){
+            int i = in.row(y);
+            int max = in.width - 1;
+            int a = 0, red = 0, g = 0, b = 0;
+
+            for(int x = -r; x <= r; x++){
+                int p = in.data[i + clamp(x, max)];
+                a += p >>> 24;
+                red += (p >> 16) & 0xFF;
+                g += (p >> 8) & 0xFF;
+                b += p & 0xFF;
+            }
+
+            for(int x = 0; x <= max; x++){
+                int d = x * 4;
+                dst[d] = a;
+                dst[d + 1] = red;
+                dst[d + 2] = g;
+                dst[d + 3] = b;
+
+                int in1 = in.data[i + Math.min(x + r + 1, max)], out1 = in.data[i + Math.max(x - r, 0)];
+                a += (in1 >>> 24) - (out1 >>> 24);
+                red += ((in1 >> 16) & 0xFF) - ((out1 >> 16) & 0xFF);
+                g += ((in1 >> 8) & 0xFF) - ((out1 >> 8) & 0xFF);
+                b += (in1 & 0xFF) - (out1 & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * runs several convolutions after each other
+     */
+    private static final class Chain extends IEConvolve{
+        private final IEConvolve[] steps;
+
+        Chain(IEConvolve[] steps){
+            super(Arrays.stream(steps).mapToInt(IEConvolve::haloRadius).sum());
+            this.steps = steps;
+        }
+
+        @Override
+        public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+            BufferedImage result = img;
+
+            for(IEConvolve step : steps)
+                result = step.masker(result, maInf);
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package lenger.imageedit;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * edge detection on an {@link IERaster}, run as one {@link ImgEditor.MaskFunction}
+ *
+ * <p>the source is walked with a window of three rows, every row is read once into the window and the row below the
+ * current one replaces the oldest, so no pixel is read more than once. Pixels outside the image are taken from the
+ * nearest border pixel.</p>
+ * <p>the output is gray, with the edge strength between {@code 0 - 255} in every channel including alpha,
+ * like {@link IEAlg#contrastMask(BufferedImage, IEAInfo) contrastMask}, or a {@code TYPE_BYTE_GRAY} image for the {@link #gray() gray} variants</p>
+ * <pre>{@code
+ * ImgEditor.setMaskFunction(IEEdge.SOBEL);
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEEdge implements ImgEditor.MaskFunction {
+    public static final IEEdge NEIGHBOUR = new IEEdge(Operator.NEIGHBOUR);
+    public static final IEEdge SOBEL = new IEEdge(Operator.SOBEL);
+    public static final IEEdge SCHARR = new IEEdge(Operator.SCHARR);
+    public static final IEEdge LAPLACIAN = new IEEdge(Operator.LAPLACIAN);
+
+    // (sum * RECIPROCAL[count]) >>> 20 == sum / (4 * count) for every sum a NEIGHBOUR pixel can have
+    private static final int[] RECIPROCAL = {0, (1 << 20) / 4 + 1, (1 << 20) / 8 + 1, (1 << 20) / 12 + 1, (1 << 20) / 16 + 1};
+
+    public enum Operator{
+        /**
+         * average {@link IPUtil#ColorDiff(java.awt.Color, java.awt.Color) ColorDiff} to the 4 direct neighbours that are inside
+         * the image, the same values as {@link IEAlg#contrastMask(BufferedImage, IEAInfo) contrastMask}
+         */
+        NEIGHBOUR{
+            @Override
+            int load(int argb){
+                return argb | 0xFF000000;
+            }
+
+            @Override
+            void row(int[] up, int[] mid, int[] down, int[] out, int o, int width, int rowNeighbours){
+                for(int x = 0; x < width; x++){
+                    int l = Math.max(x - 1, 0), r = Math.min(x + 1, width - 1);
+                    int p = mid[x];
+                    // neighbours outside the image are the pixel itself and add nothing to the sum
+                    int sum = IPUtil.colorDiffSum(p, mid[l]) + IPUtil.colorDiffSum(p, mid[r])
+                            + IPUtil.colorDiffSum(p, up[x]) + IPUtil.colorDiffSum(p, down[x]);
+                    int count = rowNeighbours + (x - l) + (r - x);
+                    out[o + x] = (sum * RECIPROCAL[count]) >>> 20;
+                }
+            }
+        },
+        /**
+         * Sobel gradient {@code |gx| + |gy|} of the luminance
+         */
+        SOBEL{
+            @Override
+            void row(int[] up, int[] mid, int[] down, int[] out, int o, int width, int rowNeighbours){
+                gradient(up, mid, down, out, o, width, 1, 2, 3);
+            }
+        },
+        /**
+         * Scharr gradient {@code |gx| + |gy|} of the luminance, scaled to the range of {@link #SOBEL}
+         */
+        SCHARR{
+            @Override
+            void row(int[] up, int[] mid, int[] down, int[] out, int o, int width, int rowNeighbours){
+                gradient(up, mid, down, out, o, width, 3, 10, 12);
+            }
+        },
+        /**
+         * absolute 4 neighbour Laplacian of the luminance
+         */
+        LAPLACIAN{
+            @Override
+            void row(int[] up, int[] mid, int[] down, int[] out, int o, int width, int rowNeighbours){
+                for(int x = 0; x < width; x++){
+                    int l = Math.max(x - 1, 0), r = Math.min(x + 1, width - 1);
+                    int lap = 4 * mid[x] - mid[l] - mid[r] - up[x] - down[x];
+                    out[o + x] = Math.min(255, IPUtil.abs(lap) / 3);
+                }
+            }
+        };
+
+        /**
+         * returns the value kept in the window for the pixel {@code argb}, {@code r + g + b} unless overridden
+         */
+        int load(int argb){
+            return IPUtil.rgbSum(argb);
+        }
+
+        /**
+         * writes the edge strength of one row, between {@code 0 - 255}, from the window rows {@code up}, {@code mid} and {@code down}
+         * @param rowNeighbours how many of the rows above and below are inside the image
+         */
+        abstract void row(int[] up, int[] mid, int[] down, int[] out, int o, int width, int rowNeighbours);
+
+        /**
+         * 3x3 gradient with the weights {@code outer, center, outer}, {@code divisor} also turns {@code r + g + b} into luminance
+         */
+        static void gradient(int[] up, int[] mid, int[] down, int[] out, int o, int width, int outer, int center, int divisor){
+            for(int x = 0; x < width; x++){
+                int l = Math.max(x - 1, 0), r = Math.min(x + 1, width - 1);
+                int gx = outer * (up[r] - up[l] + down[r] - down[l]) + center * (mid[r] - mid[l]);
+                int gy = outer * (down[l] - up[l] + down[r] - up[r]) + center * (down[x] - up[x]);
+                out[o + x] = Math.min(255, (IPUtil.abs(gx) + IPUtil.abs(gy)) / divisor);
+            }
+        }
+    }
+
+    private final Operator op;
+    private final boolean grayOutput;
+
+    public IEEdge(Operator op){
+        this(op, false);
+    }
+
+    private IEEdge(Operator op, boolean grayOutput){
+        this.op = op;
+        this.grayOutput = grayOutput;
+    }
+
+    /**
+     * returns the same operator writing the edge strength into a {@code TYPE_BYTE_GRAY} image, a quarter of the memory of the ARGB output
+     * @return {@link IEEdge}
+     */
+    public IEEdge gray(){
+        return grayOutput ? this : new IEEdge(op, true);
+    }
+
+    @Override
+    public int outputType(){
+        return grayOutput ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_ARGB;
+    }
+
+    public Operator getOperator(){
+        return op;
+    }
+
+    @Override
+    public boolean needsThreshold(){
+        return false;
+    }
+
+    @Override
+    public boolean declaresThreshold(){
+        return true;
+    }
+
+    /**
+     * every pixel reads its direct neighbours
+     */
+    @Override
+    public int haloRadius(){
+        return 1;
+    }
+
+    @Override
+    public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+        IERaster in = IERaster.of(img);
+        IERaster out = grayOutput ? null : IERaster.create(in.width, in.height);
+        IERaster.Gray grayOut = grayOutput ? IERaster.Gray.create(in.width, in.height) : null;
+        int width = in.width;
+
+        int[] up = new int[width], mid = new int[width], down = new int[width], values = new int[width];
+        load(in, 0, mid);
+        System.arraycopy(mid, 0, up, 0, width);
+
+        for(int y = 0; y < in.height; y++){
+            if(y + 1 < in.height)
+                load(in, y + 1, down);
+            else
+                System.arraycopy(mid, 0, down, 0, width);
+
+            int rowNeighbours = (y > 0 ? 1 : 0) + (y + 1 < in.height ? 1 : 0);
+            op.row(up, mid, down, values, 0, width, rowNeighbours);
+
+            if(grayOutput){
+                int o = grayOut.row(y);
+                for(int x = 0; x < width; x++)
+                    grayOut.data[o + x] = (byte)values[x];
+            }
+            else {
+                int o = out.row(y);
+                for(int x = 0; x < width; x++)
+                    out.data[o + x] = IERaster.argb(values[x], values[x], values[x], values[x]);
+            }
+
+            int[] oldest = up;
+            up = mid;
+            mid = down;
+            down = oldest;
+        }
+
+        return grayOutput ? grayOut.image : out.image;
+    }
+
+    private void load(IERaster in, int y, int[] dst){
+        int i = in.row(y);
+
+        for(int x = 0; x < in.width; x++)
+            dst[x] = op.load(in.data[i + x]);
+    }
+}
@@ -0,0 +1,233 @@
+package lenger.imageedit;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Luminance and channel histograms of an image, and thresholds picked from them
+ *
+ * <p>the luminance of a pixel is {@code (r + g + b) / 3}, the value the threshold Algorithms in {@link IEAlg} compare
+ * {@link IEAInfo#threshold} with, so a threshold from this class splits the pixels exactly like the mask will.
+ * Images larger than {@value #PARALLEL_THRESHOLD} pixels are split into row blocks on the common {@link ForkJoinPool},
+ * every block counts into its own histogram and the histograms are added together at the end.</p>
+ * <pre>{@code
+ * IEHistogram.of(img).setOtsuThreshold(maInf);
+ * ImgEditor.maskBufferedImage(img, maInf);
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEHistogram {
+    public static final int BINS = 256;
+
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final long[] luminance;
+    private final long[] alpha, red, green, blue;
+    private final long count;
+
+    private IEHistogram(Counts counts){
+        this.luminance = counts.luminance;
+        this.alpha = counts.alpha;
+        this.red = counts.red;
+        this.green = counts.green;
+        this.blue = counts.blue;
+        this.count = counts.count;
+    }
+
+    /**
+     * counts all pixels of {@code img} in one pass
+     * @param img
+     * @return {@link IEHistogram}
+     */
+    public static IEHistogram of(BufferedImage img){
+        IERaster in = IERaster.of(img);
+        return new IEHistogram(ForkJoinPool.commonPool().invoke(new CountTask(in, 0, in.height)));
+    }
+
+    /**
+     * returns how many pixels have the luminance {@code (r + g + b) / 3} of every index
+     * @return long[] with {@value #BINS} entries
+     */
+    public long[] getLuminance(){
+        return luminance.clone();
+    }
+
+    public long[] getAlpha(){
+        return alpha.clone();
+    }
+
+    public long[] getRed(){
+        return red.clone();
+    }
+
+    public long[] getGreen(){
+        return green.clone();
+    }
+
+    public long[] getBlue(){
+        return blue.clone();
+    }
+
+    /**
+     * returns the number of pixels counted
+     * @return long
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /**
+     * returns the threshold of Otsu's method, splitting the luminance into the pixels {@code <= threshold} and {@code > threshold}
+     * with the largest variance between both groups, {@code 0} for an empty image
+     * @return int between {@code 0 - 255}
+     */
+    public int otsu(){
+        double total = 0;
+        for(int i = 0; i < BINS; i++)
+            total += (double)i * luminance[i];
+
+        long below = 0;
+        double belowTotal = 0, best = -1;
+        int threshold = 0;
+
+        for(int t = 0; t < BINS; t++){
+            below += luminance[t];
+            belowTotal += (double)t * luminance[t];
+            long above = count - below;
+
+            if(below == 0)
+                continue;
+            if(above == 0)
+                break;
+
+            double meanDiff = belowTotal / below - (total - belowTotal) / above;
+            double between = (double)below * above * meanDiff * meanDiff;
+
+            if(between > best){
+                best = between;
+                threshold = t;
+            }
+        }
+
+        return threshold;
+    }
+
+    /**
+     * returns the smallest luminance at or below which at least {@code fraction} of all pixels are, so about {@code 1 - fraction}
+     * of the pixels are above the returned threshold
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code fraction} is not between {@code 0 - 1}</p>
+     * @param fraction
+     * @return int between {@code 0 - 255}
+     */
+    public int percentile(double fraction){
+        if(!(fraction >= 0 && fraction <= 1))
+            throw new IllegalArgumentException("fraction has to be between 0 and 1 but was %f".formatted(fraction));
+
+        double needed = fraction * count;
+        long seen = 0;
+
+        for(int i = 0; i < BINS; i++){
+            seen += luminance[i];
+            if(seen >= needed && seen > 0)
+                return i;
+        }
+
+        return BINS - 1;
+    }
+
+    /**
+     * sets {@code maInf.threshold} to {@link #otsu() otsu}, kept between {@code maInf.threshold_min} and {@code maInf.threshold_max}
+     * @param maInf
+     */
+    public void setOtsuThreshold(IEAInfo maInf){
+        setThreshold(maInf, otsu());
+    }
+
+    /**
+     * sets {@code maInf.threshold} to {@link #percentile(double) percentile}, kept between {@code maInf.threshold_min} and {@code maInf.threshold_max}
+     * @param maInf
+     * @param fraction
+     */
+    public void setPercentileThreshold(IEAInfo maInf, double fraction){
+        setThreshold(maInf, percentile(fraction));
+    }
+
+    private static void setThreshold(IEAInfo maInf, int threshold){
+        maInf.threshold = Math.max(maInf.threshold_min, Math.min(maInf.threshold_max, threshold));
+    }
+
+    private static final class Counts{
+        final long[] luminance = new long[BINS];
+        final long[] alpha = new long[BINS], red = new long[BINS], green = new long[BINS], blue = new long[BINS];
+        long count;
+
+        void add(Counts other){
+            for(int i = 0; i < BINS; i++){
+                luminance[i] += other.luminance[i];
+                alpha[i] += other.alpha[i];
+                red[i] += other.red[i];
+                green[i] += other.green[i];
+                blue[i] += other.blue[i];
+            }
+            count += other.count;
+        }
+    }
+
+    private static final class CountTask extends RecursiveTask<Counts>{
+        private static final long serialVersionUID = 1L;
+
+        private final IERaster in;
+        private final int fromY, toY;
+
+        CountTask(IERaster in, int fromY, int toY){
+            this.in = in;
+            this.fromY = fromY;
+            this.toY = toY;
+        }
+
+        @Override
+        protected Counts compute(){
+            if((long)(toY - fromY) * in.width <= PARALLEL_THRESHOLD || toY - fromY < 2)
+                return count();
+
+            int mid = (fromY + toY) >>> 1;
+            CountTask upper = new CountTask(in, fromY, mid);
+            upper.fork();
+            Counts counts = new CountTask(in, mid, toY).compute();
+            counts.add(upper.join());
+            return counts;
+        }
+
+        private Counts count(){
+            // int bins while counting, a block has less than 2^31 pixels
+            int[] lum = new int[BINS], a = new int[BINS], r = new int[BINS], g = new int[BINS], b = new int[BINS];
+
+            for(int y = fromY; y < toY; y++){
+                int i = in.row(y);
+                for(int x = 0; x < in.width; x++){
+                    int p = in.data[i + x];
+                    int pr = (p >> 16) & 0xFF, pg = (p >> 8) & 0xFF, pb = p & 0xFF;
+                    lum[(pr + pg + pb) / 3]++;
+                    a[p >>> 24]++;
+                    r[pr]++;
+                    g[pg]++;
+                    b[pb]++;
+                }
+            }
+
+            Counts counts = new Counts();
+            for(int i = 0; i < BINS; i++){
+                counts.luminance[i] = lum[i];
+                counts.alpha[i] = a[i];
+                counts.red[i] = r[i];
+                counts.green[i] = g[i];
+                counts.blue[i] = b[i];
+            }
+            counts.count = (long)(toY - fromY) * in.width;
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package lenger.imageedit;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+/**
+ * remembers the last masked image and only recomputes what changed, for editors that mask the same image over and over
+ *
+ * <p>when only {@link IEAInfo#threshold} changed, functions that do not {@link ImgEditor.MaskFunction#needsThreshold() need it}
+ * return the last result unchanged. {@link IEAlg#PIXEL_STRENGTH_MASK}, {@link IEAlg#CONTRAST_COLOR_MASK} and
+ * {@link IEAlg#COLORSTRENGTH_MASK} only recompute the pixels whose luminance {@code (r + g + b) / 3} lies between the old and
+ * the new threshold, found through an index of all pixels sorted by luminance. After the source was edited,
+ * {@link #update(Rectangle) update} recomputes the edited rectangle and its {@link ImgEditor.MaskFunction#haloRadius() halo}.
+ * Everything else masks the whole image again on the shared {@link ImgEditor}.</p>
+ * <p>the result is changed in place and the same {@link BufferedImage} is returned until the whole image has to be masked again</p>
+ * <pre>{@code
+ * IEIncremental inc = new IEIncremental(IEAlg.PIXEL_STRENGTH_MASK);
+ * slider.addChangeListener(e -> {
+ *     maInf.threshold = slider.getValue();
+ *     view.setImage(inc.mask(img, maInf));
+ * });
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEIncremental {
+    private static final int BUCKETS = 256;
+    private static final int FULL_PASS_FRACTION = 4;
+
+    private final ImgEditor.MaskFunction fn;
+    private final IEPipeline pipeline;
+
+    private BufferedImage source, result;
+    private IERaster in;
+    private IEAInfo last;
+
+    // pixel indices y * width + x sorted by luminance, bucket b is order[start[b]] to order[start[b + 1] - 1]
+    private int[] order, start;
+
+    public IEIncremental(ImgEditor.MaskFunction fn){
+        if(fn == null)
+            throw new IllegalArgumentException("mask function cannot be null");
+
+        this.fn = fn;
+        this.pipeline = IEAlg.luminancePipeline(fn);
+    }
+
+    public ImgEditor.MaskFunction getFunction(){
+        return fn;
+    }
+
+    /**
+     * masks {@code img} with a {@link IEAInfo#snapshot() snapshot} of {@code maInf}, reusing the last result when {@code img}
+     * is the same object as last time and only the threshold changed
+     *
+     * <p>{@code maInf.b_threshold} is set like {@link ImgEditor#mask(BufferedImage, ImgEditor.MaskFunction, IEAInfo) ImgEditor.mask} does</p>
+     * @param img
+     * @param maInf
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public synchronized BufferedImage mask(BufferedImage img, IEAInfo maInf){
+        if(fn.declaresThreshold())
+            maInf.b_threshold = fn.needsThreshold();
+        IEAInfo info = maInf.snapshot();
+
+        if(img != source || result == null || !sameExceptThreshold(last, info))
+            maskAll(img, info);
+        else if(Float.compare(last.threshold, info.threshold) != 0 && fn.needsThreshold()
+                && (pipeline == null || result.getType() != BufferedImage.TYPE_INT_ARGB))
+            maskAll(img, info);
+        else {
+            if(Float.compare(last.threshold, info.threshold) != 0 && fn.needsThreshold())
+                rethreshold(last.threshold, info);
+
+            last = info;
+        }
+
+        return result;
+    }
+
+    /**
+     * recomputes the pixels of the last result that depend on the source pixels inside {@code dirty}, after they were edited
+     *
+     * <p>will throw a {@code IllegalStateException} when nothing was masked yet</p>
+     * @param dirty
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public synchronized BufferedImage update(Rectangle dirty){
+        if(result == null)
+            throw new IllegalStateException("nothing was masked yet");
+
+        Rectangle bounds = new Rectangle(source.getWidth(), source.getHeight());
+        Rectangle changed = dirty.intersection(bounds);
+        if(changed.isEmpty())
+            return result;
+
+        if(in != null)
+            refresh(changed);
+        order = null;
+
+        int radius = fn.haloRadius();
+        // every result pixel reading a changed source pixel, and the source pixels those read
+        Rectangle target = new Rectangle(changed.x - radius, changed.y - radius, changed.width + 2 * radius, changed.height + 2 * radius).intersection(bounds);
+        Rectangle halo = new Rectangle(target.x - radius, target.y - radius, target.width + 2 * radius, target.height + 2 * radius).intersection(bounds);
+
+        BufferedImage part = ImgEditor.maskBufferedImage(source.getSubimage(halo.x, halo.y, halo.width, halo.height), fn, last);
+        Object pixels = part.getRaster().getDataElements(target.x - halo.x, target.y - halo.y, target.width, target.height, null);
+        result.getRaster().setDataElements(target.x, target.y, target.width, target.height, pixels);
+
+        return result;
+    }
+
+    /**
+     * returns the last result, {@code null} when nothing was masked yet
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public synchronized BufferedImage getResult(){
+        return result;
+    }
+
+    /**
+     * forgets the last image, the next {@link #mask(BufferedImage, IEAInfo) mask} masks the whole image
+     */
+    public synchronized void reset(){
+        source = null;
+        result = null;
+        in = null;
+        last = null;
+        order = null;
+        start = null;
+    }
+
+    private BufferedImage maskAll(BufferedImage img, IEAInfo info){
+        result = ImgEditor.maskBufferedImage(img, fn, info);
+        source = img;
+        in = pipeline == null ? null : IERaster.of(img);
+        last = info;
+        order = null;
+        start = null;
+        return result;
+    }
+
+    /**
+     * runs the Pipeline again on every pixel whose luminance is on one side of {@code from} and on the other side of {@code info.threshold}
+     */
+    private void rethreshold(float from, IEAInfo info){
+        if(order == null)
+            buildIndex();
+
+        // a pixel of luminance b changes when b > from and b > threshold differ, those buckets are next to each other
+        int first = BUCKETS, end = 0;
+        for(int b = 0; b < BUCKETS; b++){
+            if((b > from) != (b > info.threshold)){
+                first = Math.min(first, b);
+                end = b + 1;
+            }
+        }
+        if(first >= end)
+            return;
+
+        int lo = start[first], hi = start[end], width = in.width;
+        IERaster out = IERaster.of(result);
+
+        // reading scattered pixels costs more than a second pass over the rows once a large part of the image changes
+        if(hi - lo > order.length / FULL_PASS_FRACTION){
+            for(int y = 0; y < in.height; y++){
+                int o = out.row(y);
+                System.arraycopy(in.data, in.row(y), out.data, o, width);
+                pipeline.apply(out.data, o, o + width, info);
+            }
+            return;
+        }
+
+        int[] px = new int[hi - lo];
+
+        for(int k = lo; k < hi; k++){
+            int i = order[k];
+            px[k - lo] = in.data[in.row(i / width) + i % width];
+        }
+
+        pipeline.apply(px, 0, px.length, info);
+
+        for(int k = lo; k < hi; k++){
+            int i = order[k];
+            out.data[out.row(i / width) + i % width] = px[k - lo];
+        }
+    }
+
+    /**
+     * counting sort of all pixels by the luminance the threshold is compared with
+     */
+    private void buildIndex(){
+        int width = in.width, height = in.height;
+        int[] next = new int[BUCKETS + 1];
+
+        for(int y = 0; y < height; y++){
+            int r = in.row(y);
+            for(int x = 0; x < width; x++)
+                next[IPUtil.rgbSum(in.data[r + x]) / 3 + 1]++;
+        }
+        for(int b = 0; b < BUCKETS; b++)
+            next[b + 1] += next[b];
+
+        start = next.clone();
+        order = new int[width * height];
+
+        for(int y = 0; y < height; y++){
+            int r = in.row(y);
+            for(int x = 0; x < width; x++)
+                order[next[IPUtil.rgbSum(in.data[r + x]) / 3]++] = y * width + x;
+        }
+    }
+
+    /**
+     * copies the edited pixels into {@code in}, needed when {@link IERaster#of(BufferedImage) IERaster.of} had to convert the source
+     */
+    private void refresh(Rectangle changed){
+        IERaster part = IERaster.of(source.getSubimage(changed.x, changed.y, changed.width, changed.height));
+
+        for(int y = 0; y < changed.height; y++)
+            System.arraycopy(part.data, part.row(y), in.data, in.row(changed.y + y) + changed.x, changed.width);
+    }
+
+    private static boolean sameExceptThreshold(IEAInfo a, IEAInfo b){
+        return a.debug == b.debug && a.colors.equals(b.colors);
+    }
+}
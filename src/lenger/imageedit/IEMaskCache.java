@@ -0,0 +1,247 @@
+package lenger.imageedit;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * cache of masked images, for services that mask the same images with the same parameters again and again
+ *
+ * <p>a result is found by two 64 bit hashes of the pixels of the source, its size and type, the {@link ImgEditor.MaskFunction}
+ * instance and the values of a {@link IEAInfo#snapshot() snapshot} the function reads, the threshold is left out for functions that do not
+ * {@link ImgEditor.MaskFunction#needsThreshold() need it}. Asking for a result that is still being masked waits for it instead of
+ * masking the image a second time. When the results take more than {@link #setMaxBytes(long) setMaxBytes}, the ones used the
+ * longest time ago are dropped.</p>
+ * <p>the pixels themselves are not compared, two different sources of the same size and type are only mixed up when both
+ * hashes collide</p>
+ * <p>the returned images are shared by every caller asking for the same result and must not be changed</p>
+ * <pre>{@code
+ * IEMaskCache cache = new IEMaskCache(IEMaskCache.DEFAULT_MAX_BYTES);
+ * BufferedImage thumb = cache.mask(img, IEAlg.PIXEL_STRENGTH_MASK, maInf);
+ * System.out.println(cache.getStats());
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEMaskCache {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private final ImgEditor editor;
+    private final Map<Key, CompletableFuture<BufferedImage>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long usedBytes = 0;
+
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder();
+
+    private record Key(long hash, long check, int width, int height, int type, ImgEditor.MaskFunction fn, float threshold, List<Color> colors, boolean debug){
+    }
+
+    /**
+     * counters of a {@link IEMaskCache} since it was created
+     */
+    public record Stats(long hits, long misses, long evictions, long usedBytes, int entries){
+        /**
+         * returns the share of requests answered from the cache, {@code 0} before the first request
+         * @return double between {@code 0 - 1}
+         */
+        public double hitRate(){
+            return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+        }
+
+        @Override
+        public String toString(){
+            return "%d hits, %d misses (%.1f%%), %d evicted, %d entries in %d bytes".formatted(hits, misses, hitRate() * 100, evictions, entries, usedBytes);
+        }
+    }
+
+    /**
+     * cache masking on the shared editor of {@link ImgEditor#maskBufferedImage(BufferedImage, ImgEditor.MaskFunction, IEAInfo) maskBufferedImage}
+     * @param maxBytes
+     */
+    public IEMaskCache(long maxBytes){
+        this(null, maxBytes);
+    }
+
+    /**
+     * cache masking on {@code editor}, {@code null} uses the shared editor
+     * @param editor
+     * @param maxBytes
+     */
+    public IEMaskCache(ImgEditor editor, long maxBytes){
+        if(maxBytes < 0)
+            throw new IllegalArgumentException("maximum cache size cannot be negative but was %d".formatted(maxBytes));
+
+        this.editor = editor;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * returns {@code img} masked with {@code fn}, from the cache when the same pixels were masked with the same parameters before
+     *
+     * <p>{@code maInf.b_threshold} is set like {@link ImgEditor#mask(BufferedImage, ImgEditor.MaskFunction, IEAInfo) ImgEditor.mask}
+     * does, before the cache is asked, so hits and misses leave the same value. Exceptions of {@code fn} are thrown to every caller waiting for the result and nothing is cached</p>
+     * @param img
+     * @param fn
+     * @param maInf
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public BufferedImage mask(BufferedImage img, ImgEditor.MaskFunction fn, IEAInfo maInf){
+        if(fn.declaresThreshold())
+            maInf.b_threshold = fn.needsThreshold();
+        IEAInfo info = maInf.snapshot();
+        long[] hash = hash(IERaster.of(img));
+        Key key = new Key(hash[0], hash[1], img.getWidth(), img.getHeight(), img.getType(), fn,
+                fn.needsThreshold() ? info.threshold : 0, info.colors, info.debug);
+
+        CompletableFuture<BufferedImage> entry, masking = null;
+        synchronized(this){
+            entry = cache.get(key);
+
+            if(entry == null){
+                masking = new CompletableFuture<>();
+                cache.put(key, masking);
+                misses.increment();
+            }
+            else
+                hits.increment();
+        }
+
+        if(masking == null)
+            return await(entry);
+
+        try{
+            BufferedImage result = editor == null ? ImgEditor.maskBufferedImage(img, fn, info) : editor.mask(img, fn, info);
+            added(key, masking, result);
+            return result;
+        } catch(RuntimeException | Error e){
+            // failed results are not kept, so a later call can try again
+            synchronized(this){
+                cache.remove(key, masking);
+            }
+            masking.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static BufferedImage await(CompletableFuture<BufferedImage> entry){
+        try{
+            return entry.join();
+        } catch(CompletionException e){
+            if(e.getCause() instanceof RuntimeException re)
+                throw re;
+            if(e.getCause() instanceof Error err)
+                throw err;
+
+            throw e;
+        }
+    }
+
+    private synchronized void added(Key key, CompletableFuture<BufferedImage> entry, BufferedImage result){
+        // completed under the lock, so evict never drops a result before its bytes were counted
+        entry.complete(result);
+        if(cache.get(key) != entry)
+            return;
+
+        usedBytes += bytes(result);
+        evict();
+    }
+
+    /**
+     * drops the least recently used results until the cache fits into {@code maxBytes}, results still being masked are kept
+     */
+    private void evict(){
+        Iterator<CompletableFuture<BufferedImage>> it = cache.values().iterator();
+
+        while(usedBytes > maxBytes && it.hasNext()){
+            BufferedImage result = it.next().getNow(null);
+
+            if(result == null)
+                continue;
+
+            usedBytes -= bytes(result);
+            evictions.increment();
+            it.remove();
+        }
+    }
+
+    private static long bytes(BufferedImage img){
+        DataBuffer db = img.getRaster().getDataBuffer();
+        return (long)db.getSize() * db.getNumBanks() * DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+
+    /**
+     * two 64 bit hashes of all pixels, four independent lanes so the multiplications of neighbouring pixels do not wait on each other.
+     * Both are mixed from the same 256 bits of lane state, so the second one costs nothing but the final mix
+     */
+    private static long[] hash(IERaster in){
+        long h0 = MIX, h1 = MIX * 3, h2 = MIX * 5, h3 = MIX * 7;
+        int width = in.width, body = width & ~3;
+
+        for(int y = 0; y < in.height; y++){
+            int i = in.row(y);
+            int x = 0;
+
+            for(; x < body; x += 4){
+                h0 = (h0 ^ in.data[i + x]) * MIX;
+                h1 = (h1 ^ in.data[i + x + 1]) * MIX;
+                h2 = (h2 ^ in.data[i + x + 2]) * MIX;
+                h3 = (h3 ^ in.data[i + x + 3]) * MIX;
+            }
+            for(; x < width; x++)
+                h0 = (h0 ^ in.data[i + x]) * MIX;
+        }
+
+        long h = h0 ^ Long.rotateLeft(h1, 16) ^ Long.rotateLeft(h2, 32) ^ Long.rotateLeft(h3, 48);
+        long check = h3 + Long.rotateLeft(h2, 21) * 3 + Long.rotateLeft(h1, 42) * 5 + h0 * 7;
+        return new long[]{mix(h), mix(check)};
+    }
+
+    /**
+     * final mix of MurmurHash3, spreads the last pixels into every bit
+     */
+    private static long mix(long h){
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    /**
+     * sets how many bytes of masked images are kept at most
+     * <p>will throw a {@code IllegalArgumentException} when {@code bytes < 0}</p>
+     * @param bytes
+     */
+    public synchronized void setMaxBytes(long bytes){
+        if(bytes < 0)
+            throw new IllegalArgumentException("maximum cache size cannot be negative but was %d".formatted(bytes));
+
+        maxBytes = bytes;
+        evict();
+    }
+
+    /**
+     * returns the hit and miss counters and the current size of the cache
+     * @return {@link Stats}
+     */
+    public synchronized Stats getStats(){
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), usedBytes, cache.size());
+    }
+
+    /**
+     * drops all results, results still being masked finish without being cached
+     */
+    public synchronized void clear(){
+        cache.clear();
+        usedBytes = 0;
+    }
+}
@@ -0,0 +1,345 @@
+package lenger.imageedit;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * timers and counters of {@link ImgEditor}, read with {@link #snapshot() snapshot} or over JMX after {@link #register() register}
+ *
+ * <p>disabled by default. While disabled every measuring point only reads one volatile flag, the counters are only touched
+ * while enabled. Calls and tiles that started while disabled are not counted.</p>
+ * <pre>{@code
+ * IEMetrics.setEnabled(true);
+ * IEMetrics.register();
+ * ...
+ * System.out.println(IEMetrics.snapshot());
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEMetrics {
+    public static final String OBJECT_NAME = "lenger.imageedit:type=IEMetrics";
+
+    private static final long DISABLED = Long.MIN_VALUE;
+
+    /**
+     * the parts a call to {@link ImgEditor#mask(java.awt.image.BufferedImage, ImgEditor.MaskFunction, IEAInfo) mask} spends its time in
+     */
+    public enum Stage{
+        /**
+         * creating the output image and the tiles, on the calling Thread
+         */
+        SPLIT,
+        /**
+         * running the {@link ImgEditor.MaskFunction} on a tile or on a whole image masked inline
+         */
+        COMPUTE,
+        /**
+         * copying a masked tile into the output image
+         */
+        COPY,
+        /**
+         * the calling Thread waiting for the tiles of its image
+         */
+        WAIT
+    }
+
+    /**
+     * time spent in one {@link Stage}, {@code count} is the number of times it was entered
+     */
+    public record StageStats(long count, long nanos, long maxNanos){
+        public double averageNanos(){
+            return count == 0 ? 0 : (double)nanos / count;
+        }
+    }
+
+    /**
+     * values of all counters at one moment, the pool values are summed over the live worker pools of all editors
+     */
+    public record Snapshot(long calls, long inlineCalls, long tiles, long pixels, long callNanos, long allocatedBytes,
+            Map<Stage, StageStats> stages, long queuedTasks, int activeThreads, int parallelism){
+        /**
+         * returns the megapixels masked per second of time spent in calls, calls running at the same time are added up
+         * @return double
+         */
+        public double megapixelsPerSecond(){
+            return callNanos == 0 ? 0 : pixels * 1e3 / callNanos;
+        }
+
+        /**
+         * returns the share of worker Threads busy when the snapshot was taken
+         * @return double between {@code 0 - 1}
+         */
+        public double poolUtilisation(){
+            return parallelism == 0 ? 0 : Math.min(1, (double)activeThreads / parallelism);
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder sb = new StringBuilder("%d calls (%d inline), %d tiles, %.1f MP/s, %d bytes allocated%n"
+                    .formatted(calls, inlineCalls, tiles, megapixelsPerSecond(), allocatedBytes));
+
+            stages.forEach((stage, s) -> sb.append("%s: %d x %.3f ms, max %.3f ms%n".formatted(stage, s.count(), s.averageNanos() / 1e6, s.maxNanos() / 1e6)));
+            return sb.append("pools: %d queued, %d of %d threads active".formatted(queuedTasks, activeThreads, parallelism)).toString();
+        }
+    }
+
+    private static volatile boolean enabled = false;
+
+    private static final LongAdder calls = new LongAdder(), inlineCalls = new LongAdder(), tiles = new LongAdder();
+    private static final LongAdder pixels = new LongAdder(), callNanos = new LongAdder(), allocatedBytes = new LongAdder();
+    private static final LongAdder[] stageCounts = adders(), stageNanos = adders();
+    private static final LongAccumulator[] stageMax = new LongAccumulator[Stage.values().length];
+
+    static {
+        for(int i = 0; i < stageMax.length; i++)
+            stageMax[i] = new LongAccumulator(Math::max, 0);
+    }
+
+    private static final Set<ForkJoinPool> pools = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean allocations =
+            threads instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported() ? t : null;
+
+    public static boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * turns measuring on or off, the counters keep their values
+     * @param on
+     */
+    public static void setEnabled(boolean on){
+        if(on && allocations != null && !allocations.isThreadAllocatedMemoryEnabled())
+            allocations.setThreadAllocatedMemoryEnabled(true);
+
+        enabled = on;
+    }
+
+    /**
+     * returns the current time to pass to {@link #stop(Stage, long) stop} when enabled
+     */
+    static long start(){
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * adds the time since {@code started} to {@code stage}
+     */
+    static void stop(Stage stage, long started){
+        if(started == DISABLED)
+            return;
+
+        long nanos = System.nanoTime() - started;
+        stageCounts[stage.ordinal()].increment();
+        stageNanos[stage.ordinal()].add(nanos);
+        stageMax[stage.ordinal()].accumulate(nanos);
+    }
+
+    /**
+     * counts a finished call of {@code pixelCount} pixels that began at {@code started}
+     */
+    static void call(long started, long pixelCount, int tileCount){
+        if(started == DISABLED)
+            return;
+
+        callNanos.add(System.nanoTime() - started);
+        calls.increment();
+        pixels.add(pixelCount);
+
+        if(tileCount == 0)
+            inlineCalls.increment();
+        else
+            tiles.add(tileCount);
+    }
+
+    /**
+     * returns the bytes allocated by the current Thread so far to pass to {@link #allocated(long) allocated}, when enabled and supported by the JVM
+     */
+    static long allocationStart(){
+        return enabled && allocations != null ? allocations.getCurrentThreadAllocatedBytes() : DISABLED;
+    }
+
+    /**
+     * adds the bytes the current Thread allocated since {@code started}
+     */
+    static void allocated(long started){
+        if(started == DISABLED)
+            return;
+
+        allocatedBytes.add(allocations.getCurrentThreadAllocatedBytes() - started);
+    }
+
+    /**
+     * adds {@code pool} to the pools whose queue and Threads are reported, the pool is forgotten once it is shut down
+     */
+    static void addPool(ForkJoinPool pool){
+        pools.add(pool);
+    }
+
+    /**
+     * returns the current values of all counters
+     * @return {@link Snapshot}
+     */
+    public static Snapshot snapshot(){
+        Map<Stage, StageStats> stages = new EnumMap<>(Stage.class);
+        for(Stage s : Stage.values())
+            stages.put(s, new StageStats(stageCounts[s.ordinal()].sum(), stageNanos[s.ordinal()].sum(), stageMax[s.ordinal()].get()));
+
+        long queued = 0;
+        int active = 0, parallelism = 0;
+        List<ForkJoinPool> live;
+        synchronized(pools){
+            pools.removeIf(ForkJoinPool::isShutdown);
+            live = List.copyOf(pools);
+        }
+        for(ForkJoinPool p : live){
+            queued += p.getQueuedSubmissionCount() + p.getQueuedTaskCount();
+            active += p.getActiveThreadCount();
+            parallelism += p.getParallelism();
+        }
+
+        return new Snapshot(calls.sum(), inlineCalls.sum(), tiles.sum(), pixels.sum(), callNanos.sum(), allocatedBytes.sum(),
+                Collections.unmodifiableMap(stages), queued, active, parallelism);
+    }
+
+    /**
+     * sets all counters back to {@code 0}
+     */
+    public static void reset(){
+        for(LongAdder a : List.of(calls, inlineCalls, tiles, pixels, callNanos, allocatedBytes))
+            a.reset();
+        for(int i = 0; i < stageMax.length; i++){
+            stageCounts[i].reset();
+            stageNanos[i].reset();
+            stageMax[i].reset();
+        }
+    }
+
+    /**
+     * registers the counters as {@value #OBJECT_NAME} with the platform MBean server, registering twice does nothing
+     *
+     * <p>will throw a {@code IllegalStateException} when the MBean server refuses the bean</p>
+     */
+    public static void register(){
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        try{
+            server.registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+        } catch(InstanceAlreadyExistsException e){
+            // already registered
+        } catch(JMException e){
+            throw new IllegalStateException("cannot register %s".formatted(OBJECT_NAME), e);
+        }
+    }
+
+    private static LongAdder[] adders(){
+        LongAdder[] adders = new LongAdder[Stage.values().length];
+        for(int i = 0; i < adders.length; i++)
+            adders[i] = new LongAdder();
+        return adders;
+    }
+
+    private static final class Bean implements IEMetricsMXBean{
+        @Override
+        public boolean isEnabled(){
+            return IEMetrics.isEnabled();
+        }
+
+        @Override
+        public void setEnabled(boolean on){
+            IEMetrics.setEnabled(on);
+        }
+
+        @Override
+        public long getCalls(){
+            return calls.sum();
+        }
+
+        @Override
+        public long getInlineCalls(){
+            return inlineCalls.sum();
+        }
+
+        @Override
+        public long getTiles(){
+            return tiles.sum();
+        }
+
+        @Override
+        public long getPixels(){
+            return pixels.sum();
+        }
+
+        @Override
+        public double getMegapixelsPerSecond(){
+            return snapshot().megapixelsPerSecond();
+        }
+
+        @Override
+        public long getAllocatedBytes(){
+            return allocatedBytes.sum();
+        }
+
+        @Override
+        public long getQueuedTasks(){
+            return snapshot().queuedTasks();
+        }
+
+        @Override
+        public int getActiveThreads(){
+            return snapshot().activeThreads();
+        }
+
+        @Override
+        public double getPoolUtilisation(){
+            return snapshot().poolUtilisation();
+        }
+
+        @Override
+        public Map<String, Long> getStageNanos(){
+            return byStage(stageNanos);
+        }
+
+        @Override
+        public Map<String, Long> getStageCounts(){
+            return byStage(stageCounts);
+        }
+
+        @Override
+        public Map<String, Long> getStageMaxNanos(){
+            Map<String, Long> map = new LinkedHashMap<>();
+            for(Stage s : Stage.values())
+                map.put(s.name(), stageMax[s.ordinal()].get());
+            return map;
+        }
+
+        @Override
+        public void reset(){
+            IEMetrics.reset();
+        }
+
+        private static Map<String, Long> byStage(LongAdder[] adders){
+            Map<String, Long> map = new LinkedHashMap<>();
+            for(Stage s : Stage.values())
+                map.put(s.name(), adders[s.ordinal()].sum());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package lenger.imageedit;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link IEMetrics}, registered by {@link IEMetrics#register() register} as {@value IEMetrics#OBJECT_NAME}
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public interface IEMetricsMXBean {
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    public long getCalls();
+
+    public long getInlineCalls();
+
+    public long getTiles();
+
+    public long getPixels();
+
+    public double getMegapixelsPerSecond();
+
+    public long getAllocatedBytes();
+
+    /**
+     * tiles waiting in the worker pools of all editors
+     */
+    public long getQueuedTasks();
+
+    public int getActiveThreads();
+
+    public double getPoolUtilisation();
+
+    /**
+     * nanoseconds spent in every {@link IEMetrics.Stage}, by name
+     */
+    public Map<String, Long> getStageNanos();
+
+    public Map<String, Long> getStageCounts();
+
+    public Map<String, Long> getStageMaxNanos();
+
+    public void reset();
+}
@@ -0,0 +1,203 @@
+package lenger.imageedit;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A chain of per pixel {@link Stage}s which is run as one {@link ImgEditor.MaskFunction}.
+ *
+ * <p>every row of the source is copied once into the output image and all stages are applied to it in place,
+ * so a chain of masks needs a single pass and a single output image instead of one image per mask</p>
+ * <pre>{@code
+ * ImgEditor.setMaskFunction(new IEPipeline(IEPipeline.average(IEPipeline.channel(IEPipeline.GREEN), IEPipeline.channel(IEPipeline.RED))));
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IEPipeline implements ImgEditor.MaskFunction {
+    public static final int RED = 0x00FF0000;
+    public static final int GREEN = 0x0000FF00;
+    public static final int BLUE = 0x000000FF;
+
+    static final int WHITE_TRANSPARENT = 0x00FFFFFF;
+    static final int BLACK = 0xFF000000;
+
+    /**
+     * one step of a {@link IEPipeline}, changes the ARGB pixels {@code px[from]} to {@code px[to - 1]} in place
+     */
+    @FunctionalInterface
+    public interface Stage{
+        public void apply(int[] px, int from, int to, IEAInfo maInf);
+
+        /**
+         * returns {@code true} when the stage reads {@link IEAInfo#threshold}
+         * @return boolean
+         */
+        public default boolean needsThreshold(){
+            return false;
+        }
+    }
+
+    private final Stage[] stages;
+    private final boolean needsThreshold;
+
+    public IEPipeline(Stage... stages){
+        this.stages = stages.clone();
+        this.needsThreshold = Arrays.stream(stages).anyMatch(Stage::needsThreshold);
+    }
+
+    /**
+     * returns a new Pipeline running all stages of this Pipeline followed by {@code stage}
+     * @param stage
+     * @return {@link IEPipeline}
+     */
+    public IEPipeline then(Stage stage){
+        Stage[] next = Arrays.copyOf(stages, stages.length + 1);
+        next[stages.length] = stage;
+        return new IEPipeline(next);
+    }
+
+    /**
+     * returns {@code true} when any of the stages reads {@link IEAInfo#threshold}
+     */
+    @Override
+    public boolean needsThreshold(){
+        return needsThreshold;
+    }
+
+    @Override
+    public boolean declaresThreshold(){
+        return true;
+    }
+
+    @Override
+    public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+        IERaster in = IERaster.of(img);
+        IERaster out = IERaster.create(in.width, in.height);
+
+        for(int y = 0; y < in.height; y++){
+            int o = out.row(y);
+            System.arraycopy(in.data, in.row(y), out.data, o, in.width);
+
+            apply(out.data, o, o + in.width, maInf);
+        }
+
+        return out.image;
+    }
+
+    /**
+     * runs all stages on {@code px[from]} to {@code px[to - 1]}, the pixels do not have to be neighbours in the image
+     */
+    void apply(int[] px, int from, int to, IEAInfo maInf){
+        for(Stage s : stages)
+            s.apply(px, from, to, maInf);
+    }
+
+    /**
+     * keeps only the channels in {@code channelBits} (any combination of {@link #RED}, {@link #GREEN}, {@link #BLUE}), the alpha is always set to 255
+     * @param channelBits
+     * @return {@link Stage}
+     */
+    public static Stage channel(int channelBits){
+        return (px, from, to, maInf) -> {
+            for(int i = from; i < to; i++)
+                px[i] = BLACK | (px[i] & channelBits);
+        };
+    }
+
+    /**
+     * turns every pixel brighter than {@code maInf.threshold} transparent white and every other pixel black
+     * @return {@link Stage}
+     */
+    public static Stage threshold(){
+        return readingThreshold((px, from, to, maInf) -> {
+            int[] table = IPUtil.thresholdTable(maInf.threshold, WHITE_TRANSPARENT, BLACK);
+
+            for(int i = from; i < to; i++)
+                px[i] = table[IPUtil.rgbSum(px[i])];
+        });
+    }
+
+    /**
+     * gives every pixel brighter than {@code maInf.threshold} the color {@code maInf.colors.get(0)} and every other pixel
+     * {@code maInf.colors.get(1)}, keeping the alpha of the pixel
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code maInf.colors} holds less than 2 colors</p>
+     * <p>when {@code maInf.debug} is {@code true} every pixel is set to {@link java.awt.Color#PINK}</p>
+     * @return {@link Stage}
+     */
+    public static Stage recolor(){
+        return readingThreshold((px, from, to, maInf) -> {
+            if(maInf.debug){
+                Arrays.fill(px, from, to, Color.PINK.getRGB());
+                return;
+            }
+
+            if(maInf.colors.size() < 2)
+                throw new IllegalArgumentException("recolor needs 2 colors in IEAInfo.colors but got %d".formatted(maInf.colors.size()));
+
+            int above = maInf.colors.get(0).getRGB() & 0x00FFFFFF;
+            int below = maInf.colors.get(1).getRGB() & 0x00FFFFFF;
+            int[] table = IPUtil.thresholdTable(maInf.threshold, above, below);
+
+            for(int i = from; i < to; i++){
+                int p = px[i];
+                px[i] = (p & 0xFF000000) | table[IPUtil.rgbSum(p)];
+            }
+        });
+    }
+
+    /**
+     * runs {@code first} and {@code second} on the same input and averages their red, green and blue values, the alpha is always set to 255
+     *
+     * <p>pass {@code null} to use the unchanged input on that side</p>
+     * @param first
+     * @param second
+     * @return {@link Stage}
+     */
+    public static Stage average(Stage first, Stage second){
+        ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[0]);
+
+        Stage averaged = (px, from, to, maInf) -> {
+            int len = to - from;
+            int[] tmp = scratch.get();
+
+            if(tmp.length < len){
+                tmp = new int[len];
+                scratch.set(tmp);
+            }
+
+            System.arraycopy(px, from, tmp, 0, len);
+            if(first != null)
+                first.apply(px, from, to, maInf);
+            if(second != null)
+                second.apply(tmp, 0, len, maInf);
+
+            for(int i = 0; i < len; i++)
+                px[from + i] = IPUtil.getColorAverage(false, px[from + i], tmp[i]);
+        };
+
+        if((first != null && first.needsThreshold()) || (second != null && second.needsThreshold()))
+            return readingThreshold(averaged);
+
+        return averaged;
+    }
+
+    /**
+     * returns {@code stage} marked as {@link Stage#needsThreshold() needsThreshold}
+     */
+    private static Stage readingThreshold(Stage stage){
+        return new Stage() {
+            @Override
+            public void apply(int[] px, int from, int to, IEAInfo maInf){
+                stage.apply(px, from, to, maInf);
+            }
+
+            @Override
+            public boolean needsThreshold(){
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,242 @@
+package lenger.imageedit;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Gives direct access to the {@code int[]} behind a {@link java.awt.image.BufferedImage} in default ARGB format.
+ *
+ * <p>pixel {@code (x, y)} is found at {@code data[offset + y * stride + x]}, rows are stored one after another so loops
+ * should run over {@code y} first and {@code x} second</p>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IERaster {
+    public final BufferedImage image;
+    public final int[] data;
+    public final int offset;
+    public final int stride;
+    public final int width;
+    public final int height;
+
+    private IERaster(BufferedImage image, int[] data, int offset, int stride){
+        this.image = image;
+        this.data = data;
+        this.offset = offset;
+        this.stride = stride;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    /**
+     * returns a Raster reading the pixels of {@code img}
+     *
+     * <p>{@code TYPE_INT_ARGB} images (and their subimages) are accessed without copying, so the returned {@code data}
+     * must only be read, every other type gets converted once, with the same values {@code img.getRGB(x, y)} would return.
+     * {@code TYPE_INT_RGB}, {@code TYPE_3BYTE_BGR}, {@code TYPE_4BYTE_ABGR} and {@code TYPE_BYTE_GRAY} are converted straight
+     * from their data arrays, without going through the {@link java.awt.image.ColorModel} for every pixel</p>
+     * @param img
+     * @return {@link IERaster}
+     * @author Lenardt Gerhardts
+     * @since 17.0.1
+     */
+    public static IERaster of(BufferedImage img){
+        WritableRaster raster = img.getRaster();
+        int tx = raster.getSampleModelTranslateX(), ty = raster.getSampleModelTranslateY();
+
+        switch(img.getType()){
+            case BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_RGB -> {
+                if(raster.getSampleModel() instanceof SinglePixelPackedSampleModel sm && raster.getDataBuffer() instanceof DataBufferInt db){
+                    int offset = db.getOffset() - ty * sm.getScanlineStride() - tx;
+
+                    if(img.getType() == BufferedImage.TYPE_INT_ARGB)
+                        return new IERaster(img, db.getData(), offset, sm.getScanlineStride());
+
+                    return fromRGB(img, db.getData(), offset, sm.getScanlineStride());
+                }
+            }
+            case BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY -> {
+                if(raster.getSampleModel() instanceof ComponentSampleModel sm && raster.getDataBuffer() instanceof DataBufferByte db){
+                    int offset = db.getOffset() - ty * sm.getScanlineStride() - tx * sm.getPixelStride();
+                    return fromBytes(img, db.getData(), offset, sm);
+                }
+            }
+            default -> {
+            }
+        }
+
+        return new IERaster(img, img.getRGB(0, 0, img.getWidth(), img.getHeight(), null, 0, img.getWidth()), 0, img.getWidth());
+    }
+
+    private static IERaster fromRGB(BufferedImage img, int[] src, int offset, int stride){
+        int width = img.getWidth(), height = img.getHeight();
+        int[] px = new int[width * height];
+
+        for(int y = 0; y < height; y++){
+            int i = offset + y * stride, o = y * width;
+            for(int x = 0; x < width; x++)
+                px[o + x] = src[i + x] | 0xFF000000;
+        }
+
+        return new IERaster(img, px, 0, width);
+    }
+
+    private static IERaster fromBytes(BufferedImage img, byte[] src, int offset, ComponentSampleModel sm){
+        int width = img.getWidth(), height = img.getHeight();
+        int ps = sm.getPixelStride(), ss = sm.getScanlineStride();
+        int[] bands = sm.getBandOffsets();
+        int[] px = new int[width * height];
+
+        if(img.getType() == BufferedImage.TYPE_BYTE_GRAY){
+            int[] lut = grayLut(img);
+
+            for(int y = 0; y < height; y++){
+                int i = offset + y * ss + bands[0], o = y * width;
+                for(int x = 0; x < width; x++, i += ps)
+                    px[o + x] = lut[src[i] & 0xFF];
+            }
+        }
+        else {
+            int r = bands[0], g = bands[1], b = bands[2];
+            boolean hasAlpha = bands.length > 3;
+            int a = hasAlpha ? bands[3] : 0;
+
+            for(int y = 0; y < height; y++){
+                int i = offset + y * ss, o = y * width;
+                for(int x = 0; x < width; x++, i += ps){
+                    int alpha = hasAlpha ? src[i + a] & 0xFF : 0xFF;
+                    px[o + x] = argb(alpha, src[i + r] & 0xFF, src[i + g] & 0xFF, src[i + b] & 0xFF);
+                }
+            }
+        }
+
+        return new IERaster(img, px, 0, width);
+    }
+
+    /**
+     * returns the ARGB value of every gray level of {@code img}, converted by its {@link java.awt.image.ColorModel} like {@code getRGB} does
+     */
+    private static int[] grayLut(BufferedImage img){
+        ColorModel cm = img.getColorModel();
+        int[] lut = new int[256];
+        byte[] pixel = new byte[1];
+
+        for(int i = 0; i < lut.length; i++){
+            pixel[0] = (byte)i;
+            lut[i] = cm.getRGB(pixel);
+        }
+
+        return lut;
+    }
+
+    /**
+     * creates a new {@code TYPE_INT_ARGB} image of {@code width x height} and returns a Raster writing into it
+     * @param width
+     * @param height
+     * @return {@link IERaster}
+     * @author Lenardt Gerhardts
+     * @since 17.0.1
+     */
+    public static IERaster create(int width, int height){
+        return of(new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB));
+    }
+
+    /**
+     * returns the index of the first pixel in row {@code y}
+     * @param y
+     * @return int
+     */
+    public int row(int y){
+        return offset + y * stride;
+    }
+
+    public static int alpha(int argb){
+        return argb >>> 24;
+    }
+
+    public static int red(int argb){
+        return (argb >> 16) & 0xFF;
+    }
+
+    public static int green(int argb){
+        return (argb >> 8) & 0xFF;
+    }
+
+    public static int blue(int argb){
+        return argb & 0xFF;
+    }
+
+    /**
+     * packs the four channels into one ARGB {@code Integer}, all channels have to be between {@code 0 - 255}
+     * @param alpha
+     * @param red
+     * @param green
+     * @param blue
+     * @return int
+     */
+    public static int argb(int alpha, int red, int green, int blue){
+        return (alpha << 24) | (red << 16) | (green << 8) | blue;
+    }
+
+    /**
+     * direct access to the {@code byte[]} behind a {@code TYPE_BYTE_GRAY} image, for masks with a single channel output which
+     * need a quarter of the memory of an ARGB image
+     *
+     * <p>pixel {@code (x, y)} is found at {@code data[offset + y * stride + x]}</p>
+     */
+    public static class Gray{
+        public final BufferedImage image;
+        public final byte[] data;
+        public final int offset;
+        public final int stride;
+        public final int width;
+        public final int height;
+
+        private Gray(BufferedImage image, byte[] data, int offset, int stride){
+            this.image = image;
+            this.data = data;
+            this.offset = offset;
+            this.stride = stride;
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+        }
+
+        /**
+         * returns a Raster reading and writing the pixels of {@code img} without copying
+         *
+         * <p>will throw a {@code IllegalArgumentException} when {@code img} is not {@code TYPE_BYTE_GRAY}</p>
+         * @param img
+         * @return {@link Gray}
+         */
+        public static Gray of(BufferedImage img){
+            WritableRaster raster = img.getRaster();
+
+            if(img.getType() != BufferedImage.TYPE_BYTE_GRAY || !(raster.getSampleModel() instanceof ComponentSampleModel sm)
+                    || !(raster.getDataBuffer() instanceof DataBufferByte db))
+                throw new IllegalArgumentException("image has to be TYPE_BYTE_GRAY but was type %d".formatted(img.getType()));
+
+            int offset = db.getOffset() + sm.getBandOffsets()[0]
+                    - raster.getSampleModelTranslateY() * sm.getScanlineStride() - raster.getSampleModelTranslateX();
+            return new Gray(img, db.getData(), offset, sm.getScanlineStride());
+        }
+
+        /**
+         * creates a new {@code TYPE_BYTE_GRAY} image of {@code width x height} and returns a Raster writing into it
+         * @param width
+         * @param height
+         * @return {@link Gray}
+         */
+        public static Gray create(int width, int height){
+            return of(new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY));
+        }
+
+        public int row(int y){
+            return offset + y * stride;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+package lenger.imageedit;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * ARGB image stored in a file, for images too large for a {@link BufferedImage} or the heap
+ *
+ * <p>the file holds a small header followed by square tiles of {@code tileSize x tileSize} pixels, one tile after another.
+ * Tiles are read from the file when they are first used and kept in a cache of {@link #setCacheTiles(int) setCacheTiles}
+ * tiles, the tile used the longest time ago is written back and dropped when the cache is full. Tiles missing from the cache
+ * are read without holding the lock of the image, through a direct buffer of one tile per Thread, so neither the heap nor the
+ * mappings of the process grow with the image size and Threads reading different tiles do not wait for each other.</p>
+ * <pre>{@code
+ * try(IETiledImage scan = IETiledImage.open(Path.of("scan.iet"));
+ *         IETiledImage mask = scan.mask(IEConvolve.gaussian(3), maInf, Path.of("mask.iet"))){
+ *     BufferedImage preview = mask.read(0, 0, 1024, 1024);
+ * }
+ * }</pre>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class IETiledImage implements AutoCloseable {
+    public static final int DEFAULT_TILE_SIZE = 512;
+    public static final int DEFAULT_CACHE_TILES = 64;
+
+    private static final int MAGIC = 0x49455449;
+    private static final int HEADER_BYTES = 16;
+
+    private final FileChannel channel;
+    private final int width, height, tileSize, tilesX, tilesY;
+    private final boolean writable;
+    private final ThreadLocal<ByteBuffer> io;
+
+    // guarded by this
+    private final Map<Integer, Tile> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private int cacheTiles = DEFAULT_CACHE_TILES;
+    private long writeBacks = 0;
+
+    private static final class Tile{
+        final int[] px;
+        boolean dirty = false;
+
+        Tile(int[] px){
+            this.px = px;
+        }
+    }
+
+    private IETiledImage(FileChannel channel, int width, int height, int tileSize, boolean writable){
+        this.channel = channel;
+        this.writable = writable;
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = (width + tileSize - 1) / tileSize;
+        this.tilesY = (height + tileSize - 1) / tileSize;
+        this.io = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(tileSize * tileSize * 4).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * returns why an image of this size cannot be stored, {@code null} when it can
+     */
+    private static String invalidSize(int width, int height, int tileSize){
+        if(width < 1 || height < 1 || tileSize < 1)
+            return "image and tile size have to be at least 1 but were %dx%d and %d".formatted(width, height, tileSize);
+        if((long)tileSize * tileSize * 4 > Integer.MAX_VALUE - 8)
+            return "tiles of %d x %d pixels do not fit into an array".formatted(tileSize, tileSize);
+        if((long)((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize) > Integer.MAX_VALUE)
+            return "a %dx%d image has too many tiles of %d pixels".formatted(width, height, tileSize);
+
+        return null;
+    }
+
+    /**
+     * creates {@code file} holding a transparent black image of {@code width x height}, an existing file is overwritten
+     *
+     * <p>will throw a {@code IllegalArgumentException} when a size is smaller than 1 or a tile does not fit into an array</p>
+     * @param file
+     * @param width
+     * @param height
+     * @param tileSize
+     * @return {@link IETiledImage}
+     * @throws IOException
+     */
+    public static IETiledImage create(Path file, int width, int height, int tileSize) throws IOException {
+        String invalid = invalidSize(width, height, tileSize);
+        if(invalid != null)
+            throw new IllegalArgumentException(invalid);
+
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        IETiledImage img = new IETiledImage(channel, width, height, tileSize, true);
+
+        try{
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(width).putInt(height).putInt(tileSize).flip();
+            writeFully(channel, header, 0);
+            // the tiles stay sparse until they are written
+            channel.write(ByteBuffer.allocate(1), img.tileOffset(img.tilesX * img.tilesY) - 1);
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+
+        return img;
+    }
+
+    /**
+     * opens an image written by {@link #create(Path, int, int, int) create} for reading and writing, see {@link #open(Path, boolean)}
+     * @param file
+     * @return {@link IETiledImage}
+     * @throws IOException
+     */
+    public static IETiledImage open(Path file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * opens an image written by {@link #create(Path, int, int, int) create}, without {@code writable} the file only needs to
+     * be readable and {@link #write(BufferedImage, int, int) write} throws a {@code IllegalStateException}
+     *
+     * <p>will throw a {@code IOException} when {@code file} is not a tiled image, its header holds an invalid size or the file
+     * is shorter than its tiles</p>
+     * @param file
+     * @param writable
+     * @return {@link IETiledImage}
+     * @throws IOException
+     */
+    public static IETiledImage open(Path file, boolean writable) throws IOException {
+        FileChannel channel = writable ? FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                : FileChannel.open(file, StandardOpenOption.READ);
+
+        try{
+            if(channel.size() < HEADER_BYTES)
+                throw new IOException("\"%s\" is not a tiled image".formatted(file));
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if(header.getInt(0) != MAGIC)
+                throw new IOException("\"%s\" is not a tiled image".formatted(file));
+
+            int width = header.getInt(4), height = header.getInt(8), tileSize = header.getInt(12);
+            String invalid = invalidSize(width, height, tileSize);
+            if(invalid != null)
+                throw new IOException("\"%s\" has an invalid header: %s".formatted(file, invalid));
+
+            IETiledImage img = new IETiledImage(channel, width, height, tileSize, writable);
+            long size = img.tileOffset(img.tilesX * img.tilesY);
+            if(channel.size() < size)
+                throw new IOException("\"%s\" is truncated, it has %d bytes but its tiles need %d".formatted(file, channel.size(), size));
+
+            return img;
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * copies {@code img} into a new tiled image at {@code file}
+     * @param img
+     * @param file
+     * @param tileSize
+     * @return {@link IETiledImage}
+     * @throws IOException
+     */
+    public static IETiledImage of(BufferedImage img, Path file, int tileSize) throws IOException {
+        IETiledImage tiled = create(file, img.getWidth(), img.getHeight(), tileSize);
+        tiled.write(img, 0, 0);
+        return tiled;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getTileSize(){
+        return tileSize;
+    }
+
+    /**
+     * sets how many tiles are kept in memory at most, defaults to {@value #DEFAULT_CACHE_TILES}
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code tiles} is smaller than 1</p>
+     * @param tiles
+     */
+    public synchronized void setCacheTiles(int tiles){
+        if(tiles < 1)
+            throw new IllegalArgumentException("the cache needs at least 1 tile but was %d".formatted(tiles));
+
+        cacheTiles = tiles;
+        evict();
+    }
+
+    /**
+     * returns the region {@code (x, y, w, h)} as a new {@code TYPE_INT_ARGB} image, the region has to be inside the image
+     * @param x
+     * @param y
+     * @param w
+     * @param h
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public BufferedImage read(int x, int y, int w, int h){
+        checkRegion(x, y, w, h);
+        IERaster out = IERaster.create(w, h);
+
+        forTiles(x, y, w, h, (tile, tx, ty, ix, iy, cw, ch) -> {
+            for(int row = 0; row < ch; row++)
+                System.arraycopy(tile.px, (iy + row) * tileSize + ix, out.data, out.row(ty - y + row) + tx - x, cw);
+        });
+
+        return out.image;
+    }
+
+    /**
+     * writes {@code img} into this image with its upper left corner at {@code (x, y)}, it has to fit into the image
+     *
+     * <p>will throw a {@code IllegalStateException} when the image was {@link #open(Path, boolean) opened} read-only</p>
+     * @param img
+     * @param x
+     * @param y
+     */
+    public void write(BufferedImage img, int x, int y){
+        write(IERaster.of(img), 0, 0, x, y, img.getWidth(), img.getHeight());
+    }
+
+    /**
+     * writes the {@code w x h} pixels of {@code src} starting at {@code (srcX, srcY)} to {@code (x, y)}
+     */
+    private void write(IERaster src, int srcX, int srcY, int x, int y, int w, int h){
+        if(!writable)
+            throw new IllegalStateException("the image was opened read-only");
+        checkRegion(x, y, w, h);
+
+        forTiles(x, y, w, h, (tile, tx, ty, ix, iy, cw, ch) -> {
+            for(int row = 0; row < ch; row++)
+                System.arraycopy(src.data, src.row(srcY + ty - y + row) + srcX + tx - x, tile.px, (iy + row) * tileSize + ix, cw);
+            tile.dirty = true;
+        });
+    }
+
+    /**
+     * masks the image tile by tile on the common {@link java.util.concurrent.ForkJoinPool} and writes the result into a new
+     * tiled image at {@code outFile}
+     *
+     * <p>every tile is handed to {@code fn} together with a border of {@link ImgEditor.MaskFunction#haloRadius() haloRadius}
+     * pixels, so only the tiles around the ones being masked have to be in memory. {@code maInf} is handled like
+     * {@link ImgEditor#mask(BufferedImage, ImgEditor.MaskFunction, IEAInfo) ImgEditor.mask} does</p>
+     * @param fn
+     * @param maInf
+     * @param outFile
+     * @return {@link IETiledImage}
+     * @throws IOException
+     */
+    public IETiledImage mask(ImgEditor.MaskFunction fn, IEAInfo maInf, Path outFile) throws IOException {
+        if(maInf != null && fn.declaresThreshold())
+            maInf.b_threshold = fn.needsThreshold();
+
+        IEAInfo info = maInf == null ? null : maInf.snapshot();
+        int radius = fn.haloRadius();
+        int keep;
+        synchronized(this){
+            keep = cacheTiles;
+        }
+        IETiledImage out = create(outFile, width, height, tileSize);
+        out.setCacheTiles(keep);
+
+        try{
+            IntStream.range(0, tilesX * tilesY).parallel().forEach(t -> {
+                int posX = (t % tilesX) * tileSize, posY = (t / tilesX) * tileSize;
+                int w = Math.min(tileSize, width - posX), h = Math.min(tileSize, height - posY);
+                int haloX = Math.max(0, posX - radius), haloY = Math.max(0, posY - radius);
+                int haloWidth = Math.min(width, posX + w + radius) - haloX;
+                int haloHeight = Math.min(height, posY + h + radius) - haloY;
+
+                // every tile gets its own copy, like the tiles of ImgEditor
+                BufferedImage result = fn.masker(read(haloX, haloY, haloWidth, haloHeight), info == null ? null : info.snapshot());
+
+                if(result.getWidth() != haloWidth || result.getHeight() != haloHeight)
+                    throw new IllegalStateException("mask function returned %dx%d for tile at %d, %d".formatted(result.getWidth(), result.getHeight(), posX, posY));
+
+                out.write(IERaster.of(result), posX - haloX, posY - haloY, posX, posY, w, h);
+            });
+            out.flush();
+        } catch(RuntimeException | Error e){
+            // a half masked image is of no use to anyone
+            try{
+                out.close();
+                Files.deleteIfExists(outFile);
+            } catch(IOException suppressed){
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        return out;
+    }
+
+    /**
+     * writes all changed tiles back into the file
+     */
+    public synchronized void flush(){
+        for(Map.Entry<Integer, Tile> e : cache.entrySet())
+            writeBack(e.getKey(), e.getValue());
+    }
+
+    /**
+     * writes all changed tiles back and closes the file
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(!channel.isOpen())
+            return;
+
+        try{
+            flush();
+        } finally {
+            cache.clear();
+            channel.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface TileRegion{
+        /**
+         * {@code (tx, ty)} is the first pixel of the part in image coordinates, {@code (ix, iy)} the same pixel inside the tile
+         */
+        void apply(Tile tile, int tx, int ty, int ix, int iy, int w, int h);
+    }
+
+    /**
+     * applies {@code region} to every tile part of the region under the lock of this image, tiles missing from the cache are
+     * read before taking the lock
+     */
+    private void forTiles(int x, int y, int w, int h, TileRegion region){
+        for(int ty = y; ty < y + h; ty = (ty / tileSize + 1) * tileSize){
+            int ch = Math.min(y + h, (ty / tileSize + 1) * tileSize) - ty;
+
+            for(int tx = x; tx < x + w; tx = (tx / tileSize + 1) * tileSize){
+                int cw = Math.min(x + w, (tx / tileSize + 1) * tileSize) - tx;
+                int index = (ty / tileSize) * tilesX + tx / tileSize;
+                long seen;
+
+                synchronized(this){
+                    Tile tile = cache.get(index);
+                    if(tile != null){
+                        region.apply(tile, tx, ty, tx % tileSize, ty % tileSize, cw, ch);
+                        continue;
+                    }
+                    seen = writeBacks;
+                }
+
+                while(true){
+                    int[] px = load(index);
+
+                    synchronized(this){
+                        Tile tile = cache.get(index);
+                        if(tile == null){
+                            // a tile written back while px was read may be older in px than in the file
+                            if(writeBacks != seen){
+                                seen = writeBacks;
+                                continue;
+                            }
+                            tile = new Tile(px);
+                            cache.put(index, tile);
+                        }
+
+                        region.apply(tile, tx, ty, tx % tileSize, ty % tileSize, cw, ch);
+                        evict();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * reads tile {@code index} from the file, positional reads of different Threads do not wait for each other
+     */
+    private int[] load(int index){
+        ByteBuffer buf = io.get();
+        int[] px = new int[tileSize * tileSize];
+
+        buf.clear();
+        try{
+            readFully(channel, buf, tileOffset(index));
+        } catch(IOException e){
+            throw new UncheckedIOException("cannot read tile %d".formatted(index), e);
+        }
+        buf.flip().asIntBuffer().get(px);
+        return px;
+    }
+
+    /**
+     * drops the least recently used tiles until the cache fits, writing changed ones back
+     */
+    private void evict(){
+        Iterator<Map.Entry<Integer, Tile>> it = cache.entrySet().iterator();
+
+        while(cache.size() > cacheTiles && it.hasNext()){
+            Map.Entry<Integer, Tile> e = it.next();
+            writeBack(e.getKey(), e.getValue());
+            it.remove();
+        }
+    }
+
+    private void writeBack(int index, Tile tile){
+        if(!tile.dirty)
+            return;
+
+        ByteBuffer buf = io.get();
+        buf.clear();
+        buf.asIntBuffer().put(tile.px);
+        try{
+            writeFully(channel, buf, tileOffset(index));
+        } catch(IOException e){
+            throw new UncheckedIOException("cannot write tile %d".formatted(index), e);
+        }
+        tile.dirty = false;
+        writeBacks++;
+    }
+
+    /**
+     * fills {@code buf} from {@code position} on, positional reads do not move the channel
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while(buf.hasRemaining()){
+            if(channel.read(buf, position + buf.position()) < 0)
+                throw new IOException("unexpected end of file at %d".formatted(position + buf.position()));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while(buf.hasRemaining())
+            channel.write(buf, position + buf.position());
+    }
+
+    private long tileOffset(int index){
+        return HEADER_BYTES + (long)index * tileSize * tileSize * 4;
+    }
+
+    private void checkRegion(int x, int y, int w, int h){
+        if(x < 0 || y < 0 || w < 0 || h < 0 || (long)x + w > width || (long)y + h > height)
+            throw new IllegalArgumentException("region %d, %d, %dx%d is not inside the %dx%d image".formatted(x, y, w, h, width, height));
+    }
+}
@@ -10,6 +10,23 @@ import java.awt.image.BufferedImage;
  * @since 17.0.1
  */
 public class IPUtil {
+    private static final float[] INTENSITY = new float[256];
+    private static final int[] INTENSITY_FACTOR = new int[256];
+
+    static {
+        for (int i = 0; i < INTENSITY.length; i++) {
+            INTENSITY[i] = increaseIntensity((float) i);
+            INTENSITY_FACTOR[i] = (int) INTENSITY[i];
+        }
+    }
+
+    private static final ThreadLocal<ThresholdTable> thresholdTables = new ThreadLocal<>();
+
+    /**
+     * last table built by {@link IPUtil#thresholdTable(float, int, int) thresholdTable} on a Thread
+     */
+    private record ThresholdTable(float threshold, int above, int below, int[] table) {
+    }
 
     /**
      * simple Function that turns a rgb {@code Integer} into a
@@ -70,10 +87,7 @@ public class IPUtil {
      * @return float
      */
     public static float ColorDiff(Color col1, Color col2) {
-        return (difference(col1.getRed(), col2.getRed()) +
-                difference(col1.getBlue(), col2.getBlue()) +
-                difference(col1.getGreen(), col2.getGreen()) +
-                difference(col1.getAlpha(), col2.getAlpha())) / 4;
+        return colorDiffSum(col1.getRGB(), col2.getRGB()) / 4f;
     }
 
     /**
@@ -98,7 +112,134 @@ public class IPUtil {
         return f;
     }
 
+    /**
+     * same as {@link #increaseIntensity(float)}, values between {@code 0 - 255} are read from a table
+     * @param in
+     * @return float
+     */
+    public static float increaseIntensity(int in) {
+        if ((in & ~0xFF) == 0)
+            return INTENSITY[in];
+
+        return increaseIntensity((float) in);
+    }
+
+    /**
+     * returns {@code in * (int) increaseIntensity(in)} for a value between {@code 0 - 255}, read from a table
+     * @param in
+     * @return int
+     */
+    public static int intensify(int in) {
+        return in * INTENSITY_FACTOR[in];
+    }
+
+    /**
+     * Returns the differnce between the two ints {@code a} and {@code b}, without branching
+     * @param a
+     * @param b
+     * @return int
+     */
+    public static int difference(int a, int b) {
+        return abs(a - b);
+    }
+
+    /**
+     * branch free {@link Math#abs(int)}
+     * @param v
+     * @return int
+     */
+    public static int abs(int v) {
+        int sign = v >> 31;
+        return (v ^ sign) - sign;
+    }
+
+    /**
+     * Returns the sum of the alpha, red, green and blue differences of the ARGB pixels {@code argb1} and
+     * {@code argb2}, a value between {@code 0 - 1020} which is 4 times {@link #ColorDiff(Color, Color) ColorDiff}
+     * @param argb1
+     * @param argb2
+     * @return int
+     */
+    public static int colorDiffSum(int argb1, int argb2) {
+        return abs((argb1 >>> 24) - (argb2 >>> 24)) +
+                abs(((argb1 >> 16) & 0xFF) - ((argb2 >> 16) & 0xFF)) +
+                abs(((argb1 >> 8) & 0xFF) - ((argb2 >> 8) & 0xFF)) +
+                abs((argb1 & 0xFF) - (argb2 & 0xFF));
+    }
+
+    /**
+     * same as {@link #pixelDifference(BufferedImage, int, int) pixelDifference} reading from {@code in}, rounded down
+     *
+     * <p>like {@link #rgbToColor(int) rgbToColor} the alpha of the pixels is ignored</p>
+     * @param in
+     * @param x
+     * @param y
+     * @return int
+     */
+    public static int pixelDifference(IERaster in, int x, int y) {
+        int i = in.row(y) + x;
+        int p = in.data[i] | 0xFF000000;
+        int sum = 0;
+        int count = 0;
+
+        if (x > 0) {
+            sum += colorDiffSum(p, in.data[i - 1] | 0xFF000000);
+            count++;
+        }
+        if (x < in.width - 1) {
+            sum += colorDiffSum(p, in.data[i + 1] | 0xFF000000);
+            count++;
+        }
+        if (y > 0) {
+            sum += colorDiffSum(p, in.data[i - in.stride] | 0xFF000000);
+            count++;
+        }
+        if (y < in.height - 1) {
+            sum += colorDiffSum(p, in.data[i + in.stride] | 0xFF000000);
+            count++;
+        }
+
+        // every ColorDiff is a quarter of its sum, so the average is sum / (4 * count)
+        return sum / (count << 2);
+    }
+
+    /**
+     * returns a table {@code t} with {@code t[r + g + b]} being {@code above} when {@code (r + g + b) / 3 > threshold} and
+     * {@code below} otherwise, so a threshold test is a single array read
+     *
+     * <p>the last table is kept per Thread, the returned array must not be changed</p>
+     * @param threshold
+     * @param above
+     * @param below
+     * @return int[] with {@code 766} entries
+     */
+    public static int[] thresholdTable(float threshold, int above, int below) {
+        ThresholdTable last = thresholdTables.get();
+
+        if (last != null && Float.compare(last.threshold(), threshold) == 0 && last.above() == above && last.below() == below)
+            return last.table();
+
+        int[] table = new int[3 * 255 + 1];
+        for (int sum = 0; sum < table.length; sum++)
+            table[sum] = sum / 3 > threshold ? above : below;
+
+        thresholdTables.set(new ThresholdTable(threshold, above, below, table));
+        return table;
+    }
+
+    /**
+     * returns {@code r + g + b} of the pixel {@code argb}, the index into a {@link #thresholdTable(float, int, int) thresholdTable}
+     * @param argb
+     * @return int
+     */
+    public static int rgbSum(int argb) {
+        return ((argb >> 16) & 0xFF) + ((argb >> 8) & 0xFF) + (argb & 0xFF);
+    }
+
     public static BufferedImage imgAvg(BufferedImage img1, BufferedImage img2) {
+        if (img1.getWidth() == img2.getWidth() && img1.getHeight() == img2.getHeight())
+            return rasterAvg(IERaster.of(img1), IERaster.of(img2));
+
         BufferedImage copyImg = new BufferedImage(Math.max(img1.getWidth(), img2.getWidth()),
                 Math.max(img1.getHeight(), img2.getHeight()), BufferedImage.TYPE_INT_ARGB);
 
@@ -119,6 +260,24 @@ public class IPUtil {
         return copyImg;
     }
 
+    /**
+     * same as {@link #imgAvg(BufferedImage, BufferedImage) imgAvg} for two Rasters of equal size
+     * @param in1
+     * @param in2
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    private static BufferedImage rasterAvg(IERaster in1, IERaster in2) {
+        IERaster out = IERaster.create(in1.width, in1.height);
+
+        for (int y = 0; y < out.height; y++) {
+            int i1 = in1.row(y), i2 = in2.row(y), o = out.row(y);
+            for (int x = 0; x < out.width; x++)
+                out.data[o + x] = getColorAverage(false, in1.data[i1 + x], in2.data[i2 + x]);
+        }
+
+        return out.image;
+    }
+
     /**
      * returns Height to Width ratio from Image {@code in}
      * @author Lenardt Gerhardts
@@ -188,6 +347,20 @@ public class IPUtil {
         return new Color((int) red, (int) green, (int) blue, (int) alpha);
     }
 
+    /**
+     * same as {@link #getColorAverage(boolean, Color...) getColorAverage} for two ARGB pixels
+     * @param changeAlpha
+     * @param argb1
+     * @param argb2
+     * @return int ARGB
+     */
+    public static int getColorAverage(boolean changeAlpha, int argb1, int argb2) {
+        // (a + b) / 2 on every channel at once, the carry of each channel is cleared before shifting it down
+        int avg = (argb1 & argb2) + (((argb1 ^ argb2) & 0xFEFEFEFE) >>> 1);
+
+        return changeAlpha ? avg : avg | 0xFF000000;
+    }
+
     /**
      * returns a inversed {@link java.awt.Color}
      * @author Lenardt Gerhardts
@@ -3,36 +3,164 @@ package lenger.imageedit;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
-import java.awt.Graphics2D;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * the Class ImgEditor gives Multithreading Functionality for the Algorithms found in {@link IEAlg}
+ *
+ * <p>the static methods use one shared editor. Programs masking many images at once should create their own editors or pass
+ * the {@link MaskFunction} with every call, an editor holds no state that changes during a call so it can be used by any number
+ * of Threads without locking</p>
  * @author Lenardt Gerhardts
  * @since 1.17.1
  */
 public class ImgEditor {
 
-    private static ImgEditor instance = null;
-
     @FunctionalInterface
     public interface MaskFunction{
         public BufferedImage masker(BufferedImage img, IEAInfo maInf);
+
+        /**
+         * returns how many pixels around a pixel are read to compute it, tiles are handed to {@link #masker(BufferedImage, IEAInfo) masker}
+         * with a border of this size which is cut off afterwards
+         * @return int
+         */
+        public default int haloRadius(){
+            return 0;
+        }
+
+        /**
+         * returns {@code true} when the Algorithm reads {@link IEAInfo#threshold}, so a gui can show a control for it.
+         * {@link ImgEditor} copies this into {@link IEAInfo#b_threshold} before masking when the function
+         * {@link #declaresThreshold() declares it}
+         *
+         * <p>the default is {@code true}, so caches treat a function that does not tell as one that reads the threshold</p>
+         * @return boolean
+         */
+        public default boolean needsThreshold(){
+            return true;
+        }
+
+        /**
+         * returns {@code true} when {@link #needsThreshold() needsThreshold} is known, {@code false} for plain lambdas and method
+         * references like {@code IEAlg::redColorMask}. {@link ImgEditor} leaves {@link IEAInfo#b_threshold} unchanged for those,
+         * implementations overriding {@code needsThreshold} override this as well
+         * @return boolean
+         */
+        public default boolean declaresThreshold(){
+            return false;
+        }
+
+        /**
+         * returns the {@link BufferedImage} type {@link #masker(BufferedImage, IEAInfo) masker} returns, {@code TYPE_INT_ARGB} or
+         * {@code TYPE_BYTE_GRAY} for masks with a single channel, {@link ImgEditor} builds its output in the same type
+         * @return int
+         */
+        public default int outputType(){
+            return BufferedImage.TYPE_INT_ARGB;
+        }
+
+        /**
+         * returns {@code fn} with a {@link #haloRadius() haloRadius} of {@code radius}, keeping its {@link #needsThreshold() needsThreshold}
+         * @param fn
+         * @param radius
+         * @return {@link MaskFunction}
+         */
+        public static MaskFunction withHalo(MaskFunction fn, int radius){
+            return of(fn, radius, fn.needsThreshold(), fn.declaresThreshold());
+        }
+
+        /**
+         * returns {@code fn} with a {@link #haloRadius() haloRadius} of {@code radius} and the given {@link #needsThreshold() needsThreshold}
+         *
+         * <p>will throw a {@code IllegalArgumentException} when {@code radius} is negative</p>
+         * @param fn
+         * @param radius
+         * @param needsThreshold
+         * @return {@link MaskFunction}
+         */
+        public static MaskFunction of(MaskFunction fn, int radius, boolean needsThreshold){
+            return of(fn, radius, needsThreshold, true);
+        }
+
+        private static MaskFunction of(MaskFunction fn, int radius, boolean needsThreshold, boolean declared){
+            if(radius < 0)
+                throw new IllegalArgumentException("radius cannot be negative but was %d".formatted(radius));
+
+            return new MaskFunction() {
+                @Override
+                public BufferedImage masker(BufferedImage img, IEAInfo maInf){
+                    return fn.masker(img, maInf);
+                }
+
+                @Override
+                public int haloRadius(){
+                    return radius;
+                }
+
+                @Override
+                public boolean needsThreshold(){
+                    return needsThreshold;
+                }
+
+                @Override
+                public boolean declaresThreshold(){
+                    return declared;
+                }
+
+                @Override
+                public int outputType(){
+                    return fn.outputType();
+                }
+            };
+        }
     };
-    private MaskFunction fn = IEAlg::contrastMaskColor;
-    private List<MaskFunction> functions = new ArrayList<>();
+    private volatile MaskFunction fn;
+    private final List<MaskFunction> functions = new CopyOnWriteArrayList<>();
     private int functionpointer = 0;
 
-    private static class IEThread extends Thread{
+    // guarded by this, replaced by setThreads and close
+    private Workers workers = null;
+    private volatile int parallelism;
+    private volatile Tiles tiles = new Tiles(DEFAULT_TILE_WIDTH, DEFAULT_TILE_HEIGHT);
+
+    private record Tiles(int width, int height){
+    }
+
+    /**
+     * a worker pool and the calls currently handing it tiles, a replaced pool is shut down once the last of them is done
+     */
+    private static final class Workers{
+        final ForkJoinPool pool;
+        int users = 0;
+        boolean retired = false;
+
+        Workers(int parallelism){
+            pool = new ForkJoinPool(parallelism);
+            IEMetrics.addPool(pool);
+        }
+    }
+
+    private static class IETask implements Callable<Void>{
 
         private MaskFunction fn;
         private BufferedImage in;
-        private BufferedImage workingRect;
+        private BufferedImage out;
         private int posX, posY, width, height;
         private IEAInfo maInf;
 
-        public IEThread(MaskFunction fn, BufferedImage in, int posX, int posY, int width, int height, IEAInfo maInf){
+        public IETask(MaskFunction fn, BufferedImage in, BufferedImage out, int posX, int posY, int width, int height, IEAInfo maInf){
             this.fn = fn;
             this.in = in;
+            this.out = out;
             this.posX = posX;
             this.posY = posY;
             this.width = width;
@@ -40,47 +168,316 @@ public class ImgEditor {
             this.maInf = maInf;
         }
 
-        public BufferedImage getResult(){
-            if(this.isAlive())
-                return null;
+        /**
+         * masks the tile together with a border of {@code fn.haloRadius()} pixels, clamped to the image, and writes the
+         * inner part into {@code out}
+         */
+        @Override
+        public Void call(){
+            int radius = fn.haloRadius();
+            int haloX = Math.max(0, posX - radius), haloY = Math.max(0, posY - radius);
+            int haloWidth = Math.min(in.getWidth(), posX + width + radius) - haloX;
+            int haloHeight = Math.min(in.getHeight(), posY + height + radius) - haloY;
 
-            return workingRect;
-        }
+            long t = IEMetrics.start(), allocated = IEMetrics.allocationStart();
+            BufferedImage result = fn.masker(in.getSubimage(haloX, haloY, haloWidth, haloHeight), maInf);
+            IEMetrics.allocated(allocated);
+            IEMetrics.stop(IEMetrics.Stage.COMPUTE, t);
 
+            if(result.getWidth() != haloWidth || result.getHeight() != haloHeight)
+                throw new IllegalStateException("mask function returned %dx%d for tile %s".formatted(result.getWidth(), result.getHeight(), toString()));
 
-        @Override
-        public void run(){
-            super.run();
-            workingRect = fn.masker(in.getSubimage(0, posY, width, height), maInf);
+            t = IEMetrics.start();
+            drawSelf(result, posX - haloX, posY - haloY);
+            IEMetrics.stop(IEMetrics.Stage.COPY, t);
+            return null;
         }
 
-        public void drawSelf(BufferedImage img){
-            Graphics2D g2 = (Graphics2D)img.getGraphics();
-            while(!g2.drawImage(getResult(), posX, posY, null));
-            g2.dispose();
+        private void drawSelf(BufferedImage result, int offX, int offY){
+            if(out.getType() == BufferedImage.TYPE_BYTE_GRAY){
+                IERaster.Gray src = IERaster.Gray.of(result), dst = IERaster.Gray.of(out);
+                for(int y = 0; y < height; y++)
+                    System.arraycopy(src.data, src.row(y + offY) + offX, dst.data, dst.row(posY + y) + posX, width);
+                return;
+            }
+
+            IERaster src = IERaster.of(result), dst = IERaster.of(out);
+            for(int y = 0; y < height; y++)
+                System.arraycopy(src.data, src.row(y + offY) + offX, dst.data, dst.row(posY + y) + posX, width);
         }
 
         @Override
         public String toString(){
-            String out = super.toString();
-            return  out + ", posX: %d | posY: %d | width: %d | height: %d,".formatted(posX,posY,width,height) + "img:: width: %d | height: %d".formatted(in.getWidth(),in.getHeight());
+            return "posX: %d | posY: %d | width: %d | height: %d,".formatted(posX,posY,width,height) + "img:: width: %d | height: %d".formatted(in.getWidth(),in.getHeight());
         }
     }
-    
-    private static final int MAX_THREADS = 2048;
 
-    private static ImgEditor get(){
-        if(instance == null)
-            instance = new ImgEditor();
+    public static final int DEFAULT_TILE_WIDTH = 4096;
+    public static final int DEFAULT_TILE_HEIGHT = 64;
 
+    /**
+     * images with at most this many pixels are masked on the calling Thread, splitting them costs more than it saves
+     */
+    public static final int INLINE_PIXELS = 1 << 16;
+
+    private static final ImgEditor instance = new ImgEditor(IEAlg.CONTRAST_COLOR_MASK);
+
+    /**
+     * Executor for {@link #maskAsync(BufferedImage, MaskFunction, IEAInfo) maskAsync}, created on first use
+     */
+    private static final class Requests{
+        static final ExecutorService executor = create();
+
+        /**
+         * one virtual Thread per request when the runtime has them (Java 21), otherwise a work stealing pool with one Thread per core
+         */
+        private static ExecutorService create(){
+            try{
+                return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch(ReflectiveOperationException | UnsupportedOperationException e){
+                return Executors.newWorkStealingPool();
+            }
+        }
+    }
+
+    private static ImgEditor get(){
         return instance;
     }
 
-    private ImgEditor(){
+    /**
+     * creates an editor with its own mask function, tile size and worker pool, using all available cores
+     *
+     * <p>every editor can be used by any number of Threads at the same time</p>
+     * @param fn
+     */
+    public ImgEditor(MaskFunction fn){
+        this(fn, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * <p>will throw a {@code IllegalArgumentException} when {@code parallelism} is smaller than 1</p>
+     * @param fn
+     * @param parallelism
+     */
+    public ImgEditor(MaskFunction fn, int parallelism){
+        if(parallelism < 1)
+            throw new IllegalArgumentException("parallelism has to be at least 1 but was %d".formatted(parallelism));
+
+        this.fn = fn;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * returns the current workers for one call, creating them with {@code parallelism} Threads if they were replaced or never
+     * used. The pool is not shut down before the call hands them back with {@link #release(Workers) release}
+     * @return {@link Workers}
+     */
+    private synchronized Workers acquire(){
+        if(workers == null)
+            workers = new Workers(parallelism);
+
+        workers.users++;
+        return workers;
+    }
+
+    private synchronized void release(Workers w){
+        w.users--;
+
+        if(w.retired && w.users == 0){
+            w.pool.shutdown();
+            notifyAll();
+        }
+    }
+
+    /**
+     * takes the current workers out of use, they are shut down as soon as no call is handing them tiles anymore
+     * @return the retired {@link Workers}, {@code null} when there were none
+     */
+    private synchronized Workers retire(){
+        Workers w = workers;
+        workers = null;
+
+        if(w != null){
+            w.retired = true;
+            if(w.users == 0)
+                w.pool.shutdown();
+        }
+
+        return w;
+    }
+
+    /**
+     * masks {@code img} with the function of this editor, see {@link #mask(BufferedImage, MaskFunction, IEAInfo)}
+     * @param img
+     * @param maInf
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public BufferedImage mask(BufferedImage img, IEAInfo maInf){
+        return mask(img, fn, maInf);
+    }
+
+    /**
+     * masks {@code img} with {@code fn}, the function of this editor is neither used nor changed
+     *
+     * <p>{@code maInf.b_threshold} is set to {@link MaskFunction#needsThreshold() fn.needsThreshold()} when {@code fn}
+     * {@link MaskFunction#declaresThreshold() declares it}, then {@code fn} gets a {@link IEAInfo#snapshot() snapshot} of
+     * {@code maInf} taken once for the whole call, every tile its own copy</p>
+     * <p>images up to {@value #INLINE_PIXELS} pixels or a single tile are masked on the calling Thread. Larger images are split into
+     * tiles of {@link #setTiles(int, int) setTiles} which are masked on the worker pool of this editor, the calling Thread blocks
+     * until all tiles are done. Algorithms reading neighbouring pixels need a {@link MaskFunction#haloRadius() haloRadius} to
+     * avoid seams between tiles</p>
+     * <p>the time of every part of the call is measured by {@link IEMetrics} while it is enabled</p>
+     * @param img
+     * @param fn
+     * @param maInf
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public BufferedImage mask(BufferedImage img, MaskFunction fn, IEAInfo maInf){
+        Tiles t = tiles;
+        long started = IEMetrics.start();
+        long pixels = (long)img.getWidth() * img.getHeight();
+
+        IEAInfo info = null;
+
+        // the workers only ever see a copy, changes to maInf during the call do not reach them
+        if(maInf != null){
+            if(fn.declaresThreshold())
+                maInf.b_threshold = fn.needsThreshold();
+            info = maInf.snapshot();
+        }
+
+        if(pixels <= INLINE_PIXELS || (img.getWidth() <= t.width() && img.getHeight() <= t.height())){
+            long allocated = IEMetrics.allocationStart();
+            BufferedImage out = fn.masker(img, info);
+            IEMetrics.allocated(allocated);
+            IEMetrics.stop(IEMetrics.Stage.COMPUTE, started);
+            IEMetrics.call(started, pixels, 0);
+            return out;
+        }
+
+        BufferedImage out = switch(fn.outputType()){
+            case BufferedImage.TYPE_INT_ARGB -> IERaster.create(img.getWidth(), img.getHeight()).image;
+            case BufferedImage.TYPE_BYTE_GRAY -> IERaster.Gray.create(img.getWidth(), img.getHeight()).image;
+            default -> throw new IllegalArgumentException("mask functions can only output TYPE_INT_ARGB or TYPE_BYTE_GRAY but not type %d".formatted(fn.outputType()));
+        };
+        List<IETask> tasks = initMaskerTasks(img, out, info, fn, t.width(), t.height());
+        IEMetrics.stop(IEMetrics.Stage.SPLIT, started);
+        long waiting = IEMetrics.start();
+        Workers w = acquire();
+
+        try{
+            awaitTasks(tasks, w.pool.invokeAll(tasks));
+        } finally {
+            release(w);
+        }
+        IEMetrics.stop(IEMetrics.Stage.WAIT, waiting);
+        IEMetrics.call(started, pixels, tasks.size());
+        return out;
+    }
+
+    /**
+     * masks {@code img} with {@code fn} without blocking the caller, on a virtual Thread when the runtime has them
+     *
+     * <p>meant for many small images at once, like thumbnails: they are masked directly on their request Thread,
+     * larger images still use the worker pool of this editor</p>
+     * @param img
+     * @param fn
+     * @param maInf
+     * @return {@link java.util.concurrent.CompletableFuture}
+     */
+    public CompletableFuture<BufferedImage> maskAsync(BufferedImage img, MaskFunction fn, IEAInfo maInf){
+        return CompletableFuture.supplyAsync(() -> mask(img, fn, maInf), Requests.executor);
+    }
+
+    public MaskFunction getFunction(){
+        return fn;
+    }
+
+    /**
+     * sets the function used by {@link #mask(BufferedImage, IEAInfo) mask}, calls already running keep the function they started with
+     *
+     * <p>a method reference like {@code IEAlg::contrastMask} has no {@link MaskFunction#haloRadius() haloRadius} and gives seams
+     * between tiles when the Algorithm reads neighbouring pixels, pass the {@code _MASK} constants of {@link IEAlg} instead</p>
+     * @param fn
+     */
+    public void setFunction(MaskFunction fn){
+        this.fn = fn;
+    }
+
+    /**
+     * adds {@code fn} to a list of masking Algorithms which can be cycled through with {@link #cycleFunction() cycleFunction}
+     * @param fn
+     */
+    public void addFunction(MaskFunction fn){
+        functions.add(fn);
+    }
+
+    /**
+     * sets the function to the next one added by {@link #addFunction(MaskFunction) addFunction}, starting over after the last one
+     */
+    public synchronized void cycleFunction(){
+        if(functions.isEmpty())
+            return;
+
+        functionpointer++;
+
+        if(functionpointer >= functions.size() || functionpointer < 0)
+            functionpointer = 0;
+
+        fn = functions.get(functionpointer);
+    }
+
+    /**
+     * sets the maximum size of the tiles an image is split into by {@link #mask(BufferedImage, MaskFunction, IEAInfo) mask}
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code width} or {@code height} are smaller than 1</p>
+     * @param width
+     * @param height
+     */
+    public void setTiles(int width, int height){
+        if(width < 1 || height < 1)
+            throw new IllegalArgumentException("tile size has to be at least 1x1 but was %dx%d".formatted(width, height));
+
+        tiles = new Tiles(width, height);
+    }
+
+    /**
+     * sets the number of worker Threads of this editor
+     *
+     * <p>calls already running finish on the old pool, which is shut down after them, later calls start a new one</p>
+     * <p>will throw a {@code IllegalArgumentException} when {@code parallelism} is smaller than 1</p>
+     * @param parallelism
+     */
+    public synchronized void setThreads(int parallelism){
+        if(parallelism < 1)
+            throw new IllegalArgumentException("parallelism has to be at least 1 but was %d".formatted(parallelism));
+
+        this.parallelism = parallelism;
+        retire();
+    }
+
+    /**
+     * shuts the worker pool of this editor down and waits for running tiles to finish, a later call to
+     * {@link #mask(BufferedImage, MaskFunction, IEAInfo) mask} will start a new pool
+     */
+    public synchronized void close(){
+        Workers w = retire();
+
+        if(w == null)
+            return;
+
+        try {
+            // release shuts the pool down once the calls handing it tiles are done
+            while(w.users > 0)
+                wait();
+            w.pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
     
     /**
-     * uses the Algorithm set by {@link #setMaskFunction() setMaskFunction}
+     * uses the Algorithm set by {@link #setMaskFunction() setMaskFunction} on the shared editor, see {@link #mask(BufferedImage, MaskFunction, IEAInfo) mask}
      * @param img
      * @param maInf
      * @return {@link java.awt.image.BufferedImage}
@@ -88,26 +485,31 @@ public class ImgEditor {
      * @since 1.17.1
      */
     public static BufferedImage maskBufferedImage(BufferedImage img, IEAInfo maInf){
-        int threadCount = img.getHeight() / 1;
-        threadCount = threadCount > MAX_THREADS ? threadCount = MAX_THREADS : threadCount;
-        threadCount = threadCount <= 0 ? threadCount = 1 : threadCount; 
-        IEThread[] mtArr = new IEThread[threadCount];
-
-        initMaskerThreads(img, maInf, mtArr);
-
-        while(threadsRunning(mtArr));
+        return get().mask(img, maInf);
+    }
 
-        return stitchImg(mtArr);
+    /**
+     * masks {@code img} with {@code fn} on the shared editor, without reading or changing its {@link #setMaskFunction(MaskFunction) setMaskFunction}
+     * @param img
+     * @param fn
+     * @param maInf
+     * @return {@link java.awt.image.BufferedImage}
+     */
+    public static BufferedImage maskBufferedImage(BufferedImage img, MaskFunction fn, IEAInfo maInf){
+        return get().mask(img, fn, maInf);
     }
 
     /**
      * {@code fn} sets the currently used masking Algorithm used by {@link #maskBufferedImage(BufferedImage, IEAInfo) maskBufferedImage}
+     *
+     * <p>like {@link #setFunction(MaskFunction) setFunction}, use {@link IEAlg#CONTRAST_MASK} rather than {@code IEAlg::contrastMask},
+     * the method reference gives seams between tiles</p>
      * @param fn
      * @author Lenardt Gerhardts
      * @since 1.17.1
      */
-    public static synchronized void setMaskFunction(MaskFunction fn){
-        get().fn = fn;
+    public static void setMaskFunction(MaskFunction fn){
+        get().setFunction(fn);
     }
 
     /**
@@ -116,8 +518,8 @@ public class ImgEditor {
      * @author Lenardt Gerhardts
      * @since 1.17.1
      */
-    public static synchronized void addMaskFunction(MaskFunction fn){
-        while(!get().functions.add(fn));
+    public static void addMaskFunction(MaskFunction fn){
+        get().addFunction(fn);
     }
 
     /**
@@ -126,47 +528,66 @@ public class ImgEditor {
      * @since 1.17.1
      */
     public static void nextFunction(){
-        get().functionpointer++;
-
-        if(get().functionpointer >= get().functions.size() || get().functionpointer < 0)
-            get().functionpointer = 0;
+        get().cycleFunction();
+    }
 
-        setMaskFunction(get().functions.get(get().functionpointer));
+    /**
+     * sets the maximum size of the tiles an image is split into by {@link #maskBufferedImage(BufferedImage, IEAInfo) maskBufferedImage}
+     * 
+     * <p>will throw a {@code IllegalArgumentException} when {@code width} or {@code height} are smaller than 1</p>
+     * @param width
+     * @param height
+     */
+    public static void setTileSize(int width, int height){
+        get().setTiles(width, height);
     }
-    
-    private static void initMaskerThreads(BufferedImage img, IEAInfo maInf, IEThread[] mtArr){
-        int posY = 0;
-        int tHeight = img.getHeight() / mtArr.length; 
 
-        for(int i = 0; i < mtArr.length; i++){
-            mtArr[i] = new IEThread(get().fn, img, 0, posY, img.getWidth(), tHeight, maInf);
-            mtArr[i].start();
-            posY += tHeight;
-        }
+    /**
+     * sets the number of worker Threads used by {@link #maskBufferedImage(BufferedImage, IEAInfo) maskBufferedImage}, defaults to the number of available cores
+     * 
+     * <p>a running pool finishes its current work and is replaced on the next call</p>
+     * <p>will throw a {@code IllegalArgumentException} when {@code parallelism} is smaller than 1</p>
+     * @param parallelism
+     */
+    public static void setParallelism(int parallelism){
+        get().setThreads(parallelism);
     }
 
-    private static boolean threadsRunning(Thread[] tArr){
-        boolean running = false;
+    /**
+     * shuts the worker pool down and waits for running tiles to finish, a later call to
+     * {@link #maskBufferedImage(BufferedImage, IEAInfo) maskBufferedImage} will start a new pool
+     */
+    public static void shutdown(){
+        get().close();
+    }
+    
+    private static List<IETask> initMaskerTasks(BufferedImage img, BufferedImage out, IEAInfo maInf, MaskFunction fn, int tWidth, int tHeight){
+        List<IETask> tasks = new ArrayList<>();
 
-        for(int i = 0; i < tArr.length; i++){
-            running = tArr[i].isAlive() || running;
+        for(int posY = 0; posY < img.getHeight(); posY += tHeight){
+            for(int posX = 0; posX < img.getWidth(); posX += tWidth){
+                // every tile gets its own copy, functions writing to it do not race with other tiles
+                tasks.add(new IETask(fn, img, out, posX, posY,
+                        Math.min(tWidth, img.getWidth() - posX), Math.min(tHeight, img.getHeight() - posY), maInf == null ? null : maInf.snapshot()));
+            }
         }
 
-        return running;
+        return tasks;
     }
 
-    private static BufferedImage stitchImg(IEThread[] mtArr){
-        IEThread lastThread = mtArr[mtArr.length - 1];
-        BufferedImage finalImg = new BufferedImage(lastThread.posX + lastThread.width, lastThread.posY + lastThread.height, BufferedImage.TYPE_INT_ARGB);
-        for(IEThread t : mtArr){
-            t.drawSelf(finalImg);
-            //System.err.println(t.toString());
+    private static void awaitTasks(List<IETask> tasks, List<Future<Void>> results){
+        for(int i = 0; i < tasks.size(); i++){
             try {
-                t.join();
+                results.get(i).get();
             } catch (InterruptedException e) {
-                e.printStackTrace();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("masking of image was interrupted", e);
+            } catch (ExecutionException e) {
+                if(e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException)e.getCause();
+
+                throw new IllegalStateException("masking of tile %s failed".formatted(tasks.get(i).toString()), e.getCause());
             }
         }
-        return finalImg;
     }
 }
@@ -1,24 +1,48 @@
 package lenger.math;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Implements Fraction representation for a {@link Number}.
+ *
+ * <p>Fractions are immutable, every calculation returns a new Fraction, so they can be shared between Threads and used as keys.</p>
  * @author Lenardt Gerhardts
  * @since 21
  */
 @SuppressWarnings("unchecked")
 public class Fraction<OverType extends Number, UnderType extends Number> extends Number implements Comparable<Fraction<?,?>>{
+
+    public static final Fraction<BigDecimal, BigDecimal> ZERO;
+    public static final Fraction<BigDecimal, BigDecimal> ONE;
+    public static final Fraction<BigDecimal, BigDecimal> HALF;
+
+    // (n | 1) for -CACHE_LOW <= n < CACHE_HIGH
+    private static final int CACHE_LOW = 128, CACHE_HIGH = 128;
+    private static final Fraction<BigDecimal, BigDecimal>[] CACHE = (Fraction<BigDecimal, BigDecimal>[])new Fraction<?,?>[CACHE_LOW + CACHE_HIGH];
+
+    static {
+        for(int i = 0; i < CACHE.length; i++)
+            CACHE[i] = new Fraction<>(new BigDecimal[]{BigDecimal.valueOf(i - CACHE_LOW), BigDecimal.ONE});
+
+        ZERO = CACHE[CACHE_LOW];
+        ONE = CACHE[CACHE_LOW + 1];
+        HALF = new Fraction<>(new BigDecimal[]{BigDecimal.ONE, BigDecimal.valueOf(2)});
+    }
     
-    private OverType over;
-    private UnderType under;
+    private final OverType over;
+    private final UnderType under;
+    // false only for Fractions made by setBase
+    private final boolean simplified;
+    private int hash;
 
     /**
      * Creates Fraction {@code (0 | 1)}.
      */
     public Fraction(){
-        set((OverType)new BigDecimal(0),(UnderType)new BigDecimal(1));
+        this(new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ONE});
     }
 
     /**
@@ -27,7 +51,7 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
      * @param under
      */
     public Fraction(OverType over, UnderType under){
-        set(over, under);
+        this(normalize(decimal(over), decimal(under)));
     }
 
     /**
@@ -35,7 +59,99 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
      * @param toFrac
      */
     public Fraction(Number toFrac){
-        set((OverType)new BigDecimal(toFrac.toString()));
+        this(normalize(decimal(toFrac), BigDecimal.ONE));
+    }
+
+    private Fraction(BigDecimal[] overUnder){
+        this(overUnder[0], overUnder[1], true);
+    }
+
+    private Fraction(BigDecimal over, BigDecimal under, boolean simplified){
+        this.over = (OverType)over;
+        this.under = (UnderType)under;
+        this.simplified = simplified;
+    }
+
+    /**
+     * Returns the Fraction {@code (over | under)}, common values like {@code (0 | 1)}, {@code (1 | 2)} and small whole numbers
+     * are shared instances. Throws {@link IllegalStateException} if {@code under == 0}.
+     * @param over
+     * @param under
+     * @return Fraction
+     */
+    public static Fraction<BigDecimal, BigDecimal> valueOf(long over, long under){
+        LongFraction frac = LongFraction.of(over, under);
+        return of(frac.getOver(), frac.getUnder());
+    }
+
+    /**
+     * Returns the Fraction {@code (number | 1)}, small whole numbers are shared instances.
+     * @param number
+     * @return Fraction
+     */
+    public static Fraction<BigDecimal, BigDecimal> valueOf(long number){
+        if(number >= -CACHE_LOW && number < CACHE_HIGH)
+            return CACHE[(int)number + CACHE_LOW];
+
+        return new Fraction<>(new BigDecimal[]{BigDecimal.valueOf(number), BigDecimal.ONE});
+    }
+
+    /**
+     * Returns the Fraction {@code (over | under)} simplified, common values are shared instances.
+     * Throws {@link IllegalStateException} if {@code under == 0}.
+     * @param over
+     * @param under
+     * @return Fraction
+     */
+    public static Fraction<BigDecimal, BigDecimal> valueOf(BigInteger over, BigInteger under){
+        return create(new BigDecimal(over), new BigDecimal(under));
+    }
+
+    /**
+     * {@code over} and {@code under} have to be simplified already with {@code under > 0}
+     */
+    private static <O extends Number, U extends Number> Fraction<O, U> of(BigInteger over, BigInteger under){
+        if(under.equals(BigInteger.ONE) && over.bitLength() < 32)
+            return (Fraction<O, U>)valueOf(over.intValue());
+        if(under.equals(BigInteger.TWO) && over.equals(BigInteger.ONE))
+            return (Fraction<O, U>)HALF;
+
+        return new Fraction<>(new BigDecimal[]{new BigDecimal(over), new BigDecimal(under)});
+    }
+
+    /**
+     * turns {@code (over | under)} into whole numbers without common divisor and {@code under > 0}
+     */
+    private static BigDecimal[] normalize(BigDecimal over, BigDecimal under){
+        BigInteger[] overUnder = normalizeExact(over, under);
+        return new BigDecimal[]{new BigDecimal(overUnder[0]), new BigDecimal(overUnder[1])};
+    }
+
+    private static BigInteger[] normalizeExact(BigDecimal over, BigDecimal under){
+        if(under.signum() == 0)
+            throw new IllegalStateException("Member \"under\" is not allowed to be Zero");
+
+        int scale = Math.max(over.scale(), under.scale());
+        BigInteger o = over.movePointRight(scale).toBigIntegerExact();
+        BigInteger u = under.movePointRight(scale).toBigIntegerExact();
+
+        if(u.signum() < 0){
+            o = o.negate();
+            u = u.negate();
+        }
+
+        BigInteger gcd = o.gcd(u);
+        if(!gcd.equals(BigInteger.ONE)){
+            o = o.divide(gcd);
+            u = u.divide(gcd);
+        }
+
+        return new BigInteger[]{o, u};
+    }
+
+    private static <O extends Number, U extends Number> Fraction<O, U> create(BigDecimal over, BigDecimal under){
+        BigInteger[] overUnder = normalizeExact(over, under);
+        return of(overUnder[0], overUnder[1]);
     }
 
     /**
@@ -58,28 +174,6 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
         System.out.println("\t|");
     }
 
-    /**
-     * Sets this Fraction {@code (toFrac | 1)}.
-     * @param toFrac
-     */
-    public void set(OverType number){
-        this.set(number, (UnderType)new BigDecimal(1));
-    }
-
-    /**
-     * Sets this Fraction {@code (over | under)}. Throws {@link IllegalStateException} if {@code under == 0}. Automatically uses {@link Fraction#simplify()}
-     * @param toFrac
-     */
-    public void set(OverType over, UnderType under){
-        if(under.doubleValue() == 0)
-            throw new IllegalStateException("Member \"under\" is not allowed to be Zero");
-
-        this.over = over;
-        this.under = under;
-
-        simplify();
-    }
-
     /**
      * Determines the greatest common divisor of {@code a} & {@code b}
      * @param a
@@ -91,20 +185,22 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
     }
 
     /**
-     * Simplifys this Fraction as low as Possible without using Decimals
+     * Fractions are always kept as low as Possible without using Decimals, so this returns an equal simplified Fraction
+     * which is {@code this} unless it was created by {@link #setBase(Integer)}
+     * @return Fraction
      */
-    public void simplify(){
-        Long gcd = gcd(over.longValue(), under.longValue());
+    public Fraction<OverType, UnderType> simplify(){
+        if(simplified)
+            return this;
 
-        over = (OverType)new BigDecimal(over.toString()).divide(new BigDecimal(gcd.toString()),  RoundingMode.HALF_UP);
-        under = (UnderType)new BigDecimal(under.toString()).divide(new BigDecimal(gcd.toString()), RoundingMode.HALF_UP);
+        return create(decimal(over), decimal(under));
     }
 
     /**
      * Adds {@code number} to this Fraction by converting it to {@code (number | 1)} and using {@link Fraction#add(Fraction)}.
      * @param <T>
      * @param number
-     * @return this
+     * @return the result as new Fraction
      */
     public <T extends Number> Fraction<OverType, UnderType> add(T number){
         return add(new Fraction<OverType, UnderType>(number));
@@ -114,28 +210,23 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
      * Adds {@code frac} by using {@code (f1.over * f2.under | f1.under * f2.under) + (f2.over * f1.under | f2.under * f1.under)}. Then uses {@link Fraction#simplify()}
      * @param <T>
      * @param frac
-     * @return this
+     * @return the result as new Fraction
      */
     public Fraction<OverType, UnderType> add(Fraction<?,?> frac){
-        BigDecimal overA = new BigDecimal(this.over.toString());
-        BigDecimal underA = new BigDecimal(this.under.toString());
+        BigDecimal overA = decimal(this.over);
+        BigDecimal underA = decimal(this.under);
 
-        BigDecimal overB = new BigDecimal(frac.over.toString());
-        BigDecimal underB = new BigDecimal(frac.under.toString());
+        BigDecimal overB = decimal(frac.over);
+        BigDecimal underB = decimal(frac.under);
 
-        over = (OverType)overA.multiply(underB).add(overB.multiply(underA));
-        under = (UnderType)underA.multiply(underB);
-
-        simplify();
-
-        return this;
+        return create(overA.multiply(underB).add(overB.multiply(underA)), underA.multiply(underB));
     }
 
     /**
      * Subtracts {@code number} to this Fraction by converting it to {@code (number | 1)} and using {@link Fraction#sub(Fraction)}.
      * @param <T>
      * @param number
-     * @return this
+     * @return the result as new Fraction
      */
     public <T extends Number> Fraction<OverType, UnderType> sub(T number){
         return sub(new Fraction<OverType, UnderType>(number));
@@ -145,28 +236,23 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
      * Subtracts {@code frac} by using {@code (f1.over * f2.under | f1.under * f2.under) - (f2.over * f1.under | f2.under * f1.under)}. Then uses {@link Fraction#simplify()}
      * @param <T>
      * @param frac
-     * @return this
+     * @return the result as new Fraction
      */
     public Fraction<OverType, UnderType> sub(Fraction<?,?> frac){
-        BigDecimal overA = new BigDecimal(this.over.toString());
-        BigDecimal underA = new BigDecimal(this.under.toString());
+        BigDecimal overA = decimal(this.over);
+        BigDecimal underA = decimal(this.under);
 
-        BigDecimal overB = new BigDecimal(frac.over.toString());
-        BigDecimal underB = new BigDecimal(frac.under.toString());
+        BigDecimal overB = decimal(frac.over);
+        BigDecimal underB = decimal(frac.under);
 
-        over = (OverType)overA.multiply(underB).subtract(overB.multiply(underA));
-        under = (UnderType)underA.multiply(underB);
-
-        simplify();
-
-        return this;
+        return create(overA.multiply(underB).subtract(overB.multiply(underA)), underA.multiply(underB));
     }
 
     /**
      * Multiplies {@code number} to this Fraction by converting it to {@code (number | 1)} and using {@link Fraction#mul(Fraction)}.
      * @param <T>
      * @param number
-     * @return this
+     * @return the result as new Fraction
      */
     public <T extends Number> Fraction<OverType, UnderType> mul(T number){
         return mul(new Fraction<OverType, UnderType>(number));
@@ -176,28 +262,23 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
      * Subtracts {@code frac} by using {@code (f1.over * f2.over | f1.under * f2.under)}. Then uses {@link Fraction#simplify()}
      * @param <T>
      * @param frac
-     * @return this
+     * @return the result as new Fraction
      */
     public Fraction<OverType, UnderType> mul(Fraction<?,?> frac) {
-        BigDecimal overA = new BigDecimal(this.over.toString());
-        BigDecimal underA = new BigDecimal(this.under.toString());
-
-        BigDecimal overB = new BigDecimal(frac.over.toString());
-        BigDecimal underB = new BigDecimal(frac.under.toString());
+        BigDecimal overA = decimal(this.over);
+        BigDecimal underA = decimal(this.under);
 
-        over = (OverType)overA.multiply(overB);
-        under = (UnderType)underA.multiply(underB);
+        BigDecimal overB = decimal(frac.over);
+        BigDecimal underB = decimal(frac.under);
 
-        simplify();
-
-        return this;
+        return create(overA.multiply(overB), underA.multiply(underB));
     }
     
     /**
      * Divides {@code number} to this Fraction by converting it to {@code (number | 1)} and using {@link Fraction#div(Fraction)}.
      * @param <T>
      * @param number
-     * @return this
+     * @return the result as new Fraction
      */
     public <T1 extends Number> Fraction<OverType, UnderType> div(T1 number){
         return div(new Fraction<T1, UnderType>(number));
@@ -207,33 +288,26 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
      * Subtracts {@code frac} by using {@code (f1.over * f2.under | f1.under * f2.over)}. Then uses {@link Fraction#simplify()}
      * @param <T>
      * @param frac
-     * @return this
+     * @return the result as new Fraction
      */
     public Fraction<OverType, UnderType> div(Fraction<?,?> frac){
-        BigDecimal overA = new BigDecimal(this.over.toString());
-        BigDecimal underA = new BigDecimal(this.under.toString());
-
-        BigDecimal overB = new BigDecimal(frac.over.toString());
-        BigDecimal underB = new BigDecimal(frac.under.toString());
-
-        over = (OverType)overA.multiply(underB);
-        under = (UnderType)underA.multiply(overB);
+        BigDecimal overA = decimal(this.over);
+        BigDecimal underA = decimal(this.under);
 
-        simplify();
+        BigDecimal overB = decimal(frac.over);
+        BigDecimal underB = decimal(frac.under);
 
-        return this;
+        return create(overA.multiply(underB), underA.multiply(overB));
     }
 
     /**
      * Converts under so that {@code under == base}, by doing {@code over = over * (base / under)} and {@code under = base}.
+     * This is the only way to get a Fraction that is not simplified, every calculation with it simplifies again.
      * @param base
-     * @return
+     * @return the result as new Fraction
      */
     public Fraction<OverType, UnderType> setBase(Integer base){
-        over = (OverType)new BigDecimal(over.toString()).multiply(new BigDecimal(base / under.doubleValue()));
-        under = (UnderType)new BigDecimal(base);
-
-        return this;
+        return new Fraction<>(decimal(over).multiply(new BigDecimal(base / under.doubleValue())), new BigDecimal(base), false);
     }
 
     /**
@@ -269,16 +343,141 @@ public class Fraction<OverType extends Number, UnderType extends Number> extends
         return over.doubleValue() / under.doubleValue();
     }
 
+    /**
+     * Compares exactly by checking the signs first, then cross multiplying. Whole numbers that fit into {@code long} are
+     * multiplied into 128 bits, everything else falls back to {@link BigDecimal}. Throws {@link NullPointerException} if {@code frac == null}.
+     */
     @Override
     public int compareTo(Fraction<?, ?> frac) {
-        if(frac == null)
-            return Integer.MIN_VALUE;
+        Objects.requireNonNull(frac, "cannot compare Fraction to null");
+
+        BigDecimal overA = decimal(this.over), underA = decimal(this.under);
+        BigDecimal overB = decimal(frac.over), underB = decimal(frac.under);
+
+        int signA = overA.signum() * underA.signum(), signB = overB.signum() * underB.signum();
+        if(signA != signB)
+            return Integer.compare(signA, signB);
+
+        int cmp;
+        if(fitsLong(overA) && fitsLong(underA) && fitsLong(overB) && fitsLong(underB))
+            cmp = LongFraction.compare128(overA.longValue(), underB.longValue(), overB.longValue(), underA.longValue());
+        else
+            cmp = overA.multiply(underB).compareTo(overB.multiply(underA));
+
+        // a/b < c/d equals a*d < c*b only for b*d > 0
+        return underA.signum() * underB.signum() > 0 ? cmp : -cmp;
+    }
+
+    /**
+     * Sorts {@code fracs} ascending, like {@link java.util.Arrays#sort(Object[])} but faster for large arrays.
+     *
+     * <p>every Fraction is turned into a {@code double} once, two Fractions are only compared exactly with
+     * {@link #compareTo(Fraction)} when their {@code double}s are too close to tell them apart</p>
+     * @param fracs
+     */
+    public static void sort(Fraction<?,?>[] fracs){
+        SortKey[] keys = new SortKey[fracs.length];
+
+        for(int i = 0; i < fracs.length; i++)
+            keys[i] = new SortKey(fracs[i]);
+
+        if(keys.length > PARALLEL_SORT_THRESHOLD)
+            Arrays.parallelSort(keys);
+        else
+            Arrays.sort(keys);
+
+        for(int i = 0; i < fracs.length; i++)
+            fracs[i] = keys[i].frac;
+    }
+
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+    private static final class SortKey implements Comparable<SortKey>{
+        // relative error of over.doubleValue() / under.doubleValue() is far below this
+        private static final double TOLERANCE = 1e-12;
+        private static final double SMALLEST_EXACT = 1e-290;
+
+        private final Fraction<?,?> frac;
+        private final double key;
+        private final boolean reliable;
+
+        SortKey(Fraction<?,?> frac){
+            this.frac = frac;
+            this.key = frac.over.doubleValue() / frac.under.doubleValue();
+
+            if(key == 0)
+                reliable = decimal(frac.over).signum() == 0;
+            else
+                reliable = Double.isFinite(key) && Math.abs(key) > SMALLEST_EXACT;
+        }
+
+        @Override
+        public int compareTo(SortKey other){
+            if(reliable && other.reliable && Math.abs(key - other.key) > TOLERANCE * Math.max(Math.abs(key), Math.abs(other.key)))
+                return Double.compare(key, other.key);
+
+            return frac.compareTo(other.frac);
+        }
+    }
+
+    private static BigDecimal decimal(Number number){
+        return number instanceof BigDecimal bd ? bd : new BigDecimal(number.toString());
+    }
+
+    /**
+     * over of the simplified Fraction, always a whole number
+     */
+    BigDecimal simplifiedOver(){
+        return decimal(simplify().over);
+    }
+
+    /**
+     * under of the simplified Fraction, always a whole number above zero
+     */
+    BigDecimal simplifiedUnder(){
+        return decimal(simplify().under);
+    }
 
-        return (int)((this.over.doubleValue() * frac.under.doubleValue()) - (frac.over.doubleValue() * this.under.doubleValue()));
+    static boolean fitsLong(BigDecimal number){
+        return number.scale() == 0 && number.precision() <= 18;
     }
 
+    /**
+     * Fractions are equal when they have the same value, so {@code (2 | 4)} made by {@link #setBase(Integer)} equals {@code (1 | 2)}.
+     */
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj)
+            return true;
+        if(!(obj instanceof Fraction<?,?> frac))
+            return false;
+        if(simplified && frac.simplified)
+            return over.equals(frac.over) && under.equals(frac.under);
+
+        return compareTo(frac) == 0;
+    }
+
+    /**
+     * computed from the simplified Fraction once and cached afterwards
+     */
+    @Override
+    public int hashCode(){
+        int h = hash;
+
+        if(h == 0){
+            Fraction<?,?> frac = simplify();
+            h = 31 * frac.over.hashCode() + frac.under.hashCode();
+            hash = h;
+        }
+
+        return h;
+    }
+
+    /**
+     * Fractions are immutable, so this returns {@code this}
+     */
     @Override
     public Object clone(){
-        return new Fraction<OverType, UnderType>(this.over, this.under);
+        return this;
     }
 }
\ No newline at end of file
@@ -0,0 +1,294 @@
+package lenger.math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Bulk operations on arrays of {@link Fraction}s.
+ *
+ * <p>Instead of chaining {@link Fraction#add(Fraction)}, values are summed over a common under in {@code long} as long as
+ * possible, and only simplified every {@value #SIMPLIFY_INTERVAL} values. Arrays longer than {@value #PARALLEL_THRESHOLD}
+ * are split across the common {@link ForkJoinPool}.</p>
+ * @author Lenardt Gerhardts
+ * @since 21
+ */
+public class Fractions {
+
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+    private static final int SIMPLIFY_INTERVAL = 64;
+
+    /**
+     * Returns the sum of all {@code fracs}, {@code (0 | 1)} for an empty array.
+     * @param fracs
+     * @return Fraction
+     */
+    public static Fraction<BigDecimal, BigDecimal> sum(Fraction<?,?>[] fracs){
+        return ForkJoinPool.commonPool().invoke(new SumTask(fracs, null, 0, fracs.length)).toFraction();
+    }
+
+    /**
+     * Returns {@code a[0] * b[0] + a[1] * b[1] + ... + a[n] * b[n]}. Throws {@link IllegalArgumentException} if the arrays differ in length.
+     * @param a
+     * @param b
+     * @return Fraction
+     */
+    public static Fraction<BigDecimal, BigDecimal> dot(Fraction<?,?>[] a, Fraction<?,?>[] b){
+        if(a.length != b.length)
+            throw new IllegalArgumentException("arrays need the same length but had %d and %d".formatted(a.length, b.length));
+
+        return ForkJoinPool.commonPool().invoke(new SumTask(a, b, 0, a.length)).toFraction();
+    }
+
+    /**
+     * Returns the average of all {@code fracs}. Throws {@link IllegalArgumentException} if {@code fracs} is empty.
+     * @param fracs
+     * @return Fraction
+     */
+    public static Fraction<BigDecimal, BigDecimal> mean(Fraction<?,?>[] fracs){
+        if(fracs.length == 0)
+            throw new IllegalArgumentException("cannot build the mean of zero Fractions");
+
+        Sum sum = ForkJoinPool.commonPool().invoke(new SumTask(fracs, null, 0, fracs.length));
+        sum.scaleUnder(fracs.length);
+        return sum.toFraction();
+    }
+
+    /**
+     * Returns an array where index {@code i} holds the sum of {@code fracs[0]} to {@code fracs[i]}.
+     *
+     * <p>large arrays are split into blocks, the block sums are built in parallel first and every block then continues from the
+     * sum of all blocks before it</p>
+     * @param fracs
+     * @return Fraction[]
+     */
+    public static Fraction<BigDecimal, BigDecimal>[] prefixSum(Fraction<?,?>[] fracs){
+        @SuppressWarnings("unchecked")
+        Fraction<BigDecimal, BigDecimal>[] result = (Fraction<BigDecimal, BigDecimal>[])new Fraction<?,?>[fracs.length];
+        int blocks = (fracs.length + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+
+        Sum[] blockSums = IntStream.range(0, blocks).parallel()
+                .mapToObj(b -> sumRange(fracs, null, b * PARALLEL_THRESHOLD, Math.min(fracs.length, (b + 1) * PARALLEL_THRESHOLD)))
+                .toArray(Sum[]::new);
+
+        Sum[] offsets = new Sum[blocks];
+        Sum running = new Sum();
+        for(int b = 0; b < blocks; b++){
+            offsets[b] = running.copy();
+            running.add(blockSums[b]);
+        }
+
+        IntStream.range(0, blocks).parallel().forEach(b -> {
+            Sum sum = offsets[b];
+            for(int i = b * PARALLEL_THRESHOLD; i < Math.min(fracs.length, (b + 1) * PARALLEL_THRESHOLD); i++){
+                sum.add(fracs[i].simplifiedOver(), fracs[i].simplifiedUnder());
+                result[i] = sum.toFraction();
+            }
+        });
+
+        return result;
+    }
+
+    private static Sum sumRange(Fraction<?,?>[] a, Fraction<?,?>[] b, int from, int to){
+        Sum sum = new Sum();
+
+        for(int i = from; i < to; i++){
+            if(b == null)
+                sum.add(a[i].simplifiedOver(), a[i].simplifiedUnder());
+            else
+                sum.addProduct(a[i].simplifiedOver(), a[i].simplifiedUnder(), b[i].simplifiedOver(), b[i].simplifiedUnder());
+        }
+
+        return sum;
+    }
+
+    /**
+     * sums {@code a[from]} to {@code a[to - 1]}, or the products with {@code b} when {@code b != null}
+     */
+    private static final class SumTask extends RecursiveTask<Sum>{
+        private static final long serialVersionUID = 1L;
+
+        private final Fraction<?,?>[] a, b;
+        private final int from, to;
+
+        SumTask(Fraction<?,?>[] a, Fraction<?,?>[] b, int from, int to){
+            this.a = a;
+            this.b = b;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Sum compute(){
+            if(to - from <= PARALLEL_THRESHOLD)
+                return sumRange(a, b, from, to);
+
+            int mid = (from + to) >>> 1;
+            SumTask left = new SumTask(a, b, from, mid);
+            left.fork();
+            Sum right = new SumTask(a, b, mid, to).compute();
+            Sum sum = left.join();
+            sum.add(right);
+            return sum;
+        }
+    }
+
+    /**
+     * running sum {@code (over | under)}, kept in {@code long} until it overflows and simplified only every {@value #SIMPLIFY_INTERVAL} values
+     */
+    private static final class Sum{
+        private long over = 0, under = 1;
+        // only set once the sum does not fit into long
+        private BigInteger bigOver, bigUnder;
+        private int unsimplified = 0;
+
+        void add(BigDecimal o, BigDecimal u){
+            if(bigOver == null && Fraction.fitsLong(o) && Fraction.fitsLong(u))
+                add(o.longValue(), u.longValue());
+            else
+                add(o.toBigInteger(), u.toBigInteger());
+        }
+
+        void addProduct(BigDecimal o1, BigDecimal u1, BigDecimal o2, BigDecimal u2){
+            if(bigOver == null && Fraction.fitsLong(o1) && Fraction.fitsLong(u1) && Fraction.fitsLong(o2) && Fraction.fitsLong(u2)){
+                try {
+                    add(Math.multiplyExact(o1.longValue(), o2.longValue()), Math.multiplyExact(u1.longValue(), u2.longValue()));
+                    return;
+                } catch (ArithmeticException e) {
+                    // falls through to BigInteger
+                }
+            }
+
+            add(o1.toBigInteger().multiply(o2.toBigInteger()), u1.toBigInteger().multiply(u2.toBigInteger()));
+        }
+
+        void add(Sum other){
+            if(bigOver == null && other.bigOver == null)
+                add(other.over, other.under);
+            else
+                add(other.getOver(), other.getUnder());
+        }
+
+        private void add(long o, long u){
+            if(bigOver == null && (tryAdd(o, u) || (simplify() && tryAdd(o, u))))
+                return;
+
+            add(BigInteger.valueOf(o), BigInteger.valueOf(u));
+        }
+
+        private boolean tryAdd(long o, long u){
+            try {
+                if(u == under){
+                    over = Math.addExact(over, o);
+                }
+                else if(under % u == 0){
+                    over = Math.addExact(over, Math.multiplyExact(o, under / u));
+                }
+                else if(u % under == 0){
+                    over = Math.addExact(Math.multiplyExact(over, u / under), o);
+                    under = u;
+                }
+                else {
+                    long newOver = Math.addExact(Math.multiplyExact(over, u), Math.multiplyExact(o, under));
+                    under = Math.multiplyExact(under, u);
+                    over = newOver;
+                }
+            } catch (ArithmeticException e) {
+                return false;
+            }
+
+            if(++unsimplified >= SIMPLIFY_INTERVAL)
+                simplify();
+            return true;
+        }
+
+        private void add(BigInteger o, BigInteger u){
+            toBig();
+
+            if(u.equals(bigUnder)){
+                bigOver = bigOver.add(o);
+            }
+            else {
+                bigOver = bigOver.multiply(u).add(o.multiply(bigUnder));
+                bigUnder = bigUnder.multiply(u);
+            }
+
+            if(++unsimplified >= SIMPLIFY_INTERVAL)
+                simplify();
+        }
+
+        void scaleUnder(long factor){
+            if(bigOver == null && (tryScale(factor) || (simplify() && tryScale(factor))))
+                return;
+
+            toBig();
+            bigUnder = bigUnder.multiply(BigInteger.valueOf(factor));
+        }
+
+        private boolean tryScale(long factor){
+            try {
+                under = Math.multiplyExact(under, factor);
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+
+        /**
+         * divides over and under by their gcd, and goes back to {@code long} when both fit again
+         * @return always {@code true}
+         */
+        private boolean simplify(){
+            unsimplified = 0;
+
+            if(bigOver == null && over != Long.MIN_VALUE){
+                long gcd = LongFraction.gcd(Math.abs(over), under);
+                over /= gcd;
+                under /= gcd;
+                return true;
+            }
+
+            toBig();
+            BigInteger gcd = bigOver.gcd(bigUnder);
+            bigOver = bigOver.divide(gcd);
+            bigUnder = bigUnder.divide(gcd);
+
+            if(bigOver.bitLength() < 63 && bigUnder.bitLength() < 63){
+                over = bigOver.longValue();
+                under = bigUnder.longValue();
+                bigOver = bigUnder = null;
+            }
+            return true;
+        }
+
+        private void toBig(){
+            if(bigOver == null){
+                bigOver = BigInteger.valueOf(over);
+                bigUnder = BigInteger.valueOf(under);
+            }
+        }
+
+        BigInteger getOver(){
+            return bigOver == null ? BigInteger.valueOf(over) : bigOver;
+        }
+
+        BigInteger getUnder(){
+            return bigOver == null ? BigInteger.valueOf(under) : bigUnder;
+        }
+
+        Sum copy(){
+            Sum sum = new Sum();
+            sum.over = over;
+            sum.under = under;
+            sum.bigOver = bigOver;
+            sum.bigUnder = bigUnder;
+            return sum;
+        }
+
+        Fraction<BigDecimal, BigDecimal> toFraction(){
+            return Fraction.valueOf(getOver(), getUnder());
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package lenger.math;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * Immutable Fraction backed by {@code long} over and under, for fast arithmetic without any allocation besides the result.
+ *
+ * <p>Fractions are always stored simplified with a positive under. When a result does not fit into {@code long} anymore it is
+ * stored as {@link BigInteger} instead, and turned back into {@code long} as soon as it fits again.</p>
+ * @author Lenardt Gerhardts
+ * @since 21
+ */
+public final class LongFraction extends Number implements Comparable<LongFraction>{
+    private static final long serialVersionUID = 1L;
+
+    public static final LongFraction ZERO = new LongFraction(0, 1);
+    public static final LongFraction ONE = new LongFraction(1, 1);
+
+    private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+    private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+    // a double needs 17 digits, the rest keeps the second rounding in doubleValue() from moving the last bit
+    private static final MathContext DOUBLE_PRECISION = new MathContext(40);
+
+    private final long over;
+    private final long under;
+
+    // only set when the Fraction does not fit into long
+    private final BigInteger bigOver;
+    private final BigInteger bigUnder;
+
+    private LongFraction(long over, long under){
+        this.over = over;
+        this.under = under;
+        this.bigOver = null;
+        this.bigUnder = null;
+    }
+
+    private LongFraction(BigInteger over, BigInteger under){
+        this.over = 0;
+        this.under = 0;
+        this.bigOver = over;
+        this.bigUnder = under;
+    }
+
+    /**
+     * Creates Fraction {@code (over | under)}. Throws {@link IllegalStateException} if {@code under == 0}.
+     * @param over
+     * @param under
+     * @return LongFraction
+     */
+    public static LongFraction of(long over, long under){
+        if(under == 0)
+            throw new IllegalStateException("Member \"under\" is not allowed to be Zero");
+
+        if(over == Long.MIN_VALUE || under == Long.MIN_VALUE)
+            return of(BigInteger.valueOf(over), BigInteger.valueOf(under));
+
+        if(under < 0){
+            over = -over;
+            under = -under;
+        }
+
+        long gcd = gcd(Math.abs(over), under);
+        return new LongFraction(over / gcd, under / gcd);
+    }
+
+    /**
+     * Creates Fraction {@code (number | 1)}.
+     * @param number
+     * @return LongFraction
+     */
+    public static LongFraction of(long number){
+        return of(number, 1);
+    }
+
+    /**
+     * Creates Fraction {@code (over | under)}. Throws {@link IllegalStateException} if {@code under == 0}.
+     * @param over
+     * @param under
+     * @return LongFraction
+     */
+    public static LongFraction of(BigInteger over, BigInteger under){
+        if(under.signum() == 0)
+            throw new IllegalStateException("Member \"under\" is not allowed to be Zero");
+
+        if(under.signum() < 0){
+            over = over.negate();
+            under = under.negate();
+        }
+
+        BigInteger gcd = over.gcd(under);
+        if(!gcd.equals(BigInteger.ONE)){
+            over = over.divide(gcd);
+            under = under.divide(gcd);
+        }
+
+        if(fitsLong(over) && fitsLong(under))
+            return new LongFraction(over.longValue(), under.longValue());
+
+        return new LongFraction(over, under);
+    }
+
+    /**
+     * Determines the greatest common divisor of {@code a} & {@code b} with the binary gcd algorithm, both have to be positive or zero.
+     * Throws {@link ArithmeticException} for negative values, which includes {@code Math.abs(Long.MIN_VALUE)}, so callers can fall back to {@link BigInteger}.
+     * @param a
+     * @param b
+     * @return long
+     */
+    public static long gcd(long a, long b){
+        if(a < 0 || b < 0)
+            throw new ArithmeticException("gcd needs values >= 0 but got %d and %d".formatted(a, b));
+        if(a == 0)
+            return b == 0 ? 1 : b;
+        if(b == 0)
+            return a;
+
+        int shift = Long.numberOfTrailingZeros(a | b);
+        a >>= Long.numberOfTrailingZeros(a);
+
+        do {
+            b >>= Long.numberOfTrailingZeros(b);
+            if(a > b){
+                long t = a;
+                a = b;
+                b = t;
+            }
+            b -= a;
+        } while(b != 0);
+
+        return a << shift;
+    }
+
+    /**
+     * returns {@code true} if over and under are stored as {@link BigInteger} because they do not fit into {@code long}
+     * @return boolean
+     */
+    public boolean isBig(){
+        return bigOver != null;
+    }
+
+    public BigInteger getOver(){
+        return isBig() ? bigOver : BigInteger.valueOf(over);
+    }
+
+    public BigInteger getUnder(){
+        return isBig() ? bigUnder : BigInteger.valueOf(under);
+    }
+
+    public int signum(){
+        return isBig() ? bigOver.signum() : Long.signum(over);
+    }
+
+    /**
+     * Adds {@code frac} by using {@code (f1.over * f2.under + f2.over * f1.under | f1.under * f2.under)}, dividing by the gcd of
+     * the unders first so the intermediate values stay small.
+     * @param frac
+     * @return the sum as new LongFraction
+     */
+    public LongFraction add(LongFraction frac){
+        if(!isBig() && !frac.isBig()){
+            try {
+                long g = gcd(under, frac.under);
+                long a = under / g, b = frac.under / g;
+                long newOver = Math.addExact(Math.multiplyExact(over, b), Math.multiplyExact(frac.over, a));
+                return of(newOver, Math.multiplyExact(a, frac.under));
+            } catch (ArithmeticException e) {
+                // falls through to BigInteger
+            }
+        }
+
+        return of(getOver().multiply(frac.getUnder()).add(frac.getOver().multiply(getUnder())), getUnder().multiply(frac.getUnder()));
+    }
+
+    /**
+     * Subtracts {@code frac} by adding its negation.
+     * @param frac
+     * @return the difference as new LongFraction
+     */
+    public LongFraction sub(LongFraction frac){
+        return add(frac.negate());
+    }
+
+    /**
+     * Multiplies by {@code frac} using {@code (f1.over * f2.over | f1.under * f2.under)}, cross simplifying first.
+     * @param frac
+     * @return the product as new LongFraction
+     */
+    public LongFraction mul(LongFraction frac){
+        if(!isBig() && !frac.isBig()){
+            try {
+                long g1 = gcd(Math.abs(over), frac.under), g2 = gcd(Math.abs(frac.over), under);
+                return of(Math.multiplyExact(over / g1, frac.over / g2), Math.multiplyExact(under / g2, frac.under / g1));
+            } catch (ArithmeticException e) {
+                // falls through to BigInteger
+            }
+        }
+
+        return of(getOver().multiply(frac.getOver()), getUnder().multiply(frac.getUnder()));
+    }
+
+    /**
+     * Divides by {@code frac} by multiplying with its inverse. Throws {@link IllegalStateException} if {@code frac == 0}.
+     * @param frac
+     * @return the quotient as new LongFraction
+     */
+    public LongFraction div(LongFraction frac){
+        return mul(frac.inverse());
+    }
+
+    public LongFraction negate(){
+        if(isBig() || over == Long.MIN_VALUE)
+            return of(getOver().negate(), getUnder());
+
+        return new LongFraction(-over, under);
+    }
+
+    /**
+     * returns {@code (under | over)}. Throws {@link IllegalStateException} if this Fraction is zero.
+     * @return LongFraction
+     */
+    public LongFraction inverse(){
+        if(isBig())
+            return of(bigUnder, bigOver);
+
+        return of(under, over);
+    }
+
+    /**
+     * Compares exactly, {@code long} Fractions are cross multiplied into 128 bits so no overflow can happen.
+     */
+    @Override
+    public int compareTo(LongFraction frac){
+        int sign = signum(), otherSign = frac.signum();
+        if(sign != otherSign)
+            return Integer.compare(sign, otherSign);
+
+        if(isBig() || frac.isBig())
+            return getOver().multiply(frac.getUnder()).compareTo(frac.getOver().multiply(getUnder()));
+
+        return compare128(over, frac.under, frac.over, under);
+    }
+
+    /**
+     * compares {@code a * b} with {@code c * d} without overflow
+     */
+    static int compare128(long a, long b, long c, long d){
+        long hi1 = Math.multiplyHigh(a, b), hi2 = Math.multiplyHigh(c, d);
+
+        if(hi1 != hi2)
+            return Long.compare(hi1, hi2);
+
+        return Long.compareUnsigned(a * b, c * d);
+    }
+
+    @Override
+    public boolean equals(Object obj){
+        if(this == obj)
+            return true;
+        if(!(obj instanceof LongFraction frac))
+            return false;
+
+        if(isBig() || frac.isBig())
+            return isBig() && frac.isBig() && bigOver.equals(frac.bigOver) && bigUnder.equals(frac.bigUnder);
+
+        return over == frac.over && under == frac.under;
+    }
+
+    @Override
+    public int hashCode(){
+        if(isBig())
+            return 31 * bigOver.hashCode() + bigUnder.hashCode();
+
+        return 31 * Long.hashCode(over) + Long.hashCode(under);
+    }
+
+    /**
+     * Converts Fraction to {@link String} in the Format {@code ( over / under)}.
+     * @return String
+     */
+    public String toFractionString(){
+        return "( %s / %s )".formatted(getOver().toString(), getUnder().toString());
+    }
+
+    @Override
+    public String toString(){
+        return "" + doubleValue();
+    }
+
+    @Override
+    public int intValue(){
+        return (int)longValue();
+    }
+
+    @Override
+    public long longValue(){
+        return isBig() ? bigOver.divide(bigUnder).longValue() : over / under;
+    }
+
+    @Override
+    public float floatValue(){
+        return (float)doubleValue();
+    }
+
+    @Override
+    public double doubleValue(){
+        if(isBig())
+            return new BigDecimal(bigOver).divide(new BigDecimal(bigUnder), DOUBLE_PRECISION).doubleValue();
+
+        return (double)over / under;
+    }
+
+    private static boolean fitsLong(BigInteger value){
+        return value.compareTo(LONG_MIN) > 0 && value.compareTo(LONG_MAX) <= 0;
+    }
+}
@@ -0,0 +1,143 @@
+package lenger.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * shared cache of decoded Sound Files, so every {@link SoundEffect} of the same file uses the same PCM buffer
+ *
+ * <p>files are decoded on a pool with one Thread per core, keyed by their canonical path. Asking for a file that is still being
+ * decoded returns the same pending result. When the decoded files take more than {@link #setMaxBytes(long) setMaxBytes}, the ones
+ * used the longest time ago are dropped from the cache, SoundEffects already using them keep their data.</p>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class SoundCache {
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final Map<String, CompletableFuture<SoundData>> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private static long maxBytes = DEFAULT_MAX_BYTES;
+    private static long usedBytes = 0;
+
+    private static final ExecutorService decoder = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r){
+            Thread t = new Thread(r, "SoundCache-decoder-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    });
+
+    /**
+     * returns the decoded {@code file}, decoding it on the pool if it is not cached
+     *
+     * <p>the result fails with an {@link UnsupportedAudioFileException} or {@link IOException} as cause when the file cannot be read</p>
+     * @param file
+     * @return CompletableFuture
+     */
+    static synchronized CompletableFuture<SoundData> load(File file){
+        String key = keyOf(file);
+        CompletableFuture<SoundData> data = cache.get(key);
+
+        if(data != null)
+            return data;
+
+        CompletableFuture<SoundData> decoding = CompletableFuture.supplyAsync(() -> {
+            try{
+                return SoundData.decode(file);
+            } catch(UnsupportedAudioFileException | IOException e){
+                throw new CompletionException(e);
+            }
+        }, decoder);
+
+        cache.put(key, decoding);
+        decoding.whenComplete((decoded, error) -> added(key, decoding, decoded));
+        return decoding;
+    }
+
+    static ExecutorService executor(){
+        return decoder;
+    }
+
+    private static synchronized void added(String key, CompletableFuture<SoundData> entry, SoundData decoded){
+        if(cache.get(key) != entry)
+            return;
+
+        if(decoded == null){
+            // failed files are not kept, so a later call can try again
+            cache.remove(key);
+            return;
+        }
+
+        usedBytes += decoded.pcm.length;
+        evict(entry);
+    }
+
+    /**
+     * drops the least recently used decoded files until the cache fits into {@code maxBytes}, never dropping {@code keep}
+     */
+    private static void evict(CompletableFuture<SoundData> keep){
+        Iterator<CompletableFuture<SoundData>> it = cache.values().iterator();
+
+        while(usedBytes > maxBytes && it.hasNext()){
+            CompletableFuture<SoundData> entry = it.next();
+            SoundData data = entry.getNow(null);
+
+            if(entry == keep || data == null)
+                continue;
+
+            usedBytes -= data.pcm.length;
+            it.remove();
+        }
+    }
+
+    private static String keyOf(File file){
+        try{
+            return file.getCanonicalPath();
+        } catch(IOException e){
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * sets how many bytes of decoded audio are kept at most, defaults to {@value #DEFAULT_MAX_BYTES}
+     * <p>will throw a {@code IllegalArgumentException} when {@code bytes < 0}</p>
+     * @param bytes
+     */
+    public static synchronized void setMaxBytes(long bytes){
+        if(bytes < 0)
+            throw new IllegalArgumentException("maximum cache size cannot be negative but was %d".formatted(bytes));
+
+        maxBytes = bytes;
+        evict(null);
+    }
+
+    /**
+     * returns how many bytes of decoded audio are cached right now
+     * @return long
+     */
+    public static synchronized long getUsedBytes(){
+        return usedBytes;
+    }
+
+    /**
+     * drops all decoded files, files still being decoded finish without being cached
+     */
+    public static synchronized void clear(){
+        cache.clear();
+        usedBytes = 0;
+    }
+}
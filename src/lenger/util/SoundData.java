@@ -0,0 +1,113 @@
+package lenger.util;
+
+import java.io.File;
+import java.io.IOException;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * a sound file decoded once into PCM bytes, shared by every voice playing it
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+final class SoundData {
+    final AudioFormat format;
+    final byte[] pcm;
+
+    SoundData(AudioFormat format, byte[] pcm){
+        this.format = format;
+        this.pcm = pcm;
+    }
+
+    /**
+     * reads and decodes {@code file} completely, compressed formats are converted to signed PCM
+     * @param file
+     * @return SoundData
+     * @throws UnsupportedAudioFileException
+     * @throws IOException
+     */
+    static SoundData decode(File file) throws UnsupportedAudioFileException, IOException {
+        try(AudioInputStream in = AudioSystem.getAudioInputStream(file)){
+            AudioFormat format = in.getFormat();
+
+            if(format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED || format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
+                return new SoundData(format, in.readAllBytes());
+
+            AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                    format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+
+            try(AudioInputStream pcmIn = AudioSystem.getAudioInputStream(pcmFormat, in)){
+                return new SoundData(pcmFormat, pcmIn.readAllBytes());
+            }
+        }
+    }
+
+    /**
+     * converts the PCM bytes into float samples between {@code -1} and {@code 1} at {@code sampleRate}, using linear interpolation
+     * @param sampleRate
+     * @return one array per channel, at most two channels
+     */
+    float[][] toFloat(float sampleRate){
+        int channels = Math.min(2, format.getChannels());
+        int bytes = (format.getSampleSizeInBits() + 7) / 8;
+        int frameSize = format.getFrameSize();
+        boolean signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
+        float scale = 1f / (1L << (bytes * 8 - 1));
+
+        int frames = frameCount();
+        float[][] samples = new float[channels][frames];
+
+        for(int f = 0; f < frames; f++){
+            for(int c = 0; c < channels; c++){
+                int pos = f * frameSize + c * bytes;
+                long value = 0;
+
+                for(int b = 0; b < bytes; b++){
+                    int octet = pcm[pos + (format.isBigEndian() ? b : bytes - 1 - b)] & 0xFF;
+                    value = (value << 8) | octet;
+                }
+
+                if(signed)
+                    value = (value << (64 - bytes * 8)) >> (64 - bytes * 8);
+                else
+                    value -= 1L << (bytes * 8 - 1);
+
+                samples[c][f] = value * scale;
+            }
+        }
+
+        if(sampleRate == format.getSampleRate())
+            return samples;
+
+        double step = format.getSampleRate() / sampleRate;
+        int outFrames = (int)(frames / step);
+        float[][] resampled = new float[channels][outFrames];
+
+        for(int c = 0; c < channels; c++){
+            for(int f = 0; f < outFrames; f++){
+                double pos = f * step;
+                int i = (int)pos;
+                float t = (float)(pos - i);
+                float next = i + 1 < frames ? samples[c][i + 1] : samples[c][i];
+                resampled[c][f] = samples[c][i] + (next - samples[c][i]) * t;
+            }
+        }
+
+        return resampled;
+    }
+
+    int frameCount(){
+        return pcm.length / format.getFrameSize();
+    }
+
+    /**
+     * returns the length in Milliseconds
+     * @return long
+     */
+    long getMilliseconds(){
+        return (long)(frameCount() * 1000L / format.getFrameRate());
+    }
+}
@@ -1,11 +1,10 @@
 package lenger.util;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
 import javax.sound.sampled.LineUnavailableException;
@@ -13,51 +12,227 @@ import javax.sound.sampled.UnsupportedAudioFileException;
 
 /**
  * small utility Class for playing short SoundEffects
+ *
+ * <p>the file is decoded once, and up to {@code polyphony} voices play it, so {@link #play() play} does not touch the disk.
+ * {@link #open() open} opens all voices up front, so even the first {@code play} only restarts an open voice. The voices
+ * stay open until {@link #close() close}. When all voices are busy the one playing the longest is restarted.</p>
+ * <pre>{@code
+ * SoundEffect shot = new SoundEffect("shot.wav");
+ * shot.open();
+ * ...
+ * shot.play();
+ * }</pre>
+ * <p>an effect created with a {@link SoundMixer} has no lines of its own, its voices are mixed into the single output line of
+ * the mixer, so any number of effects can play without running out of lines of the audio device. The samples converted for
+ * the mixer are shared by every effect of the same file.</p>
+ * <p>decoded files are shared through the {@link SoundCache}, effects of the same file only decode it once. Use
+ * {@link #loadAsync(String) loadAsync} to load many effects in parallel.</p>
+ * <p>for long files like music use {@link SoundStream}, which does not keep the whole file in memory</p>
  * @author Lenardt Gerhardts
  * @since 17.0.1
  */
-public class SoundEffect {
-    private Clip audioClip;
-    private File audioFile;
+public class SoundEffect implements AutoCloseable {
+    public static final int DEFAULT_POLYPHONY = 4;
 
-    private final double MICRO_TO_MILLIS = 0.001;
+    private File audioFile;
+    private SoundData data;
+    private SoundMixer mixer;
+    private SoundMixer.Sound sound;
+    private Clip[] voices;
+    // the voice ids of the mixer, for effects playing through a SoundMixer
+    private int[] mixerVoices;
+    // System.nanoTime() at which a voice finishes playing, 0 for a voice that is free
+    private long[] busyUntil;
+    private boolean closed = false;
 
     public SoundEffect(String filepath){
-        audioFile = new File(filepath);
-        createClip();
+        this(filepath, DEFAULT_POLYPHONY);
+    }
+
+    /**
+     * <p>will throw a {@code IllegalArgumentException} when {@code polyphony < 1}</p>
+     * @param filepath
+     * @param polyphony how many times the effect can overlap itself
+     */
+    public SoundEffect(String filepath, int polyphony){
+        this(new File(filepath), decoded(new File(filepath)), polyphony, null);
+    }
+
+    /**
+     * an effect playing through {@code mixer} instead of lines of its own
+     * @param filepath
+     * @param mixer
+     */
+    public SoundEffect(String filepath, SoundMixer mixer){
+        this(filepath, DEFAULT_POLYPHONY, mixer);
+    }
+
+    /**
+     * <p>will throw a {@code IllegalArgumentException} when {@code polyphony < 1}</p>
+     * @param filepath
+     * @param polyphony how many times the effect can overlap itself
+     * @param mixer the mixer to play through, {@code null} opens lines of its own
+     */
+    public SoundEffect(String filepath, int polyphony, SoundMixer mixer){
+        this(new File(filepath), decoded(new File(filepath)), polyphony, mixer);
+    }
+
+    private SoundEffect(File audioFile, SoundData data, int polyphony, SoundMixer mixer){
+        if(polyphony < 1)
+            throw new IllegalArgumentException("polyphony has to be at least 1 but was %d".formatted(polyphony));
+
+        this.audioFile = audioFile;
+        this.data = data;
+        this.mixer = mixer;
+        if(mixer != null && data != null)
+            sound = mixer.convert(data);
+        voices = new Clip[polyphony];
+        mixerVoices = new int[polyphony];
+        busyUntil = new long[polyphony];
+    }
+
+    /**
+     * loads the Sound File and {@link #open() opens} its voices on the {@link SoundCache} pool, so many effects can be
+     * prepared at once without blocking the caller
+     *
+     * <p>the result fails with an {@link UnsupportedAudioFileException} or {@link IOException} as cause when the file cannot be
+     * read, and with a {@link LineUnavailableException} when the voices cannot be opened</p>
+     * @param filepath
+     * @return CompletableFuture
+     */
+    public static CompletableFuture<SoundEffect> loadAsync(String filepath){
+        return loadAsync(filepath, DEFAULT_POLYPHONY);
+    }
+
+    /**
+     * <p>will throw a {@code IllegalArgumentException} when {@code polyphony < 1}</p>
+     * @param filepath
+     * @param polyphony how many times the effect can overlap itself
+     * @return CompletableFuture
+     */
+    public static CompletableFuture<SoundEffect> loadAsync(String filepath, int polyphony){
+        return loadAsync(filepath, polyphony, null);
+    }
+
+    /**
+     * like {@link #loadAsync(String, int)}, with a {@code mixer} the samples are converted for it on the pool and no voices are opened
+     * @param filepath
+     * @param polyphony how many times the effect can overlap itself
+     * @param mixer the mixer to play through, {@code null} opens lines of its own
+     * @return CompletableFuture
+     */
+    public static CompletableFuture<SoundEffect> loadAsync(String filepath, int polyphony, SoundMixer mixer){
+        if(polyphony < 1)
+            throw new IllegalArgumentException("polyphony has to be at least 1 but was %d".formatted(polyphony));
+
+        File file = new File(filepath);
+        return SoundCache.load(file).thenApplyAsync(data -> {
+            SoundEffect effect = new SoundEffect(file, data, polyphony, mixer);
+            try{
+                effect.open();
+            } catch(LineUnavailableException e){
+                throw new CompletionException(e);
+            }
+            return effect;
+        }, SoundCache.executor());
     }
 
-    private Clip createClip(){
+    /**
+     * waits for the {@link SoundCache} to decode {@code file}, {@code null} if it could not be read
+     */
+    private static SoundData decoded(File file){
         try{
-            AudioInputStream audioStream = AudioSystem.getAudioInputStream(audioFile);
-            audioClip = AudioSystem.getClip();
-            audioClip.open(audioStream);
-            return audioClip;
-        } catch (UnsupportedAudioFileException e){
-            System.err.println("filepath: \"%s\" does not have a valid format".formatted(audioFile.getAbsolutePath()));
-            e.printStackTrace();
-        } catch(LineUnavailableException | IOException e){
-            e.printStackTrace();
+            return SoundCache.load(file).join();
+        } catch(CompletionException e){
+            if(e.getCause() instanceof UnsupportedAudioFileException)
+                System.err.println("filepath: \"%s\" does not have a valid format".formatted(file.getAbsolutePath()));
+            e.getCause().printStackTrace();
+            return null;
         }
+    }
+
+    /**
+     * opens all voices, each holding its own copy of the PCM data, so {@link #play() play} never waits for the audio device.
+     * Does nothing when they are open already, the effect plays through a {@link SoundMixer}, the file could not be read or the effect was closed
+     * @throws LineUnavailableException when the audio device has no line left or there is none, the voices opened so far are closed again
+     */
+    public synchronized void open() throws LineUnavailableException {
+        if(data == null || closed || mixer != null || voices[0] != null)
+            return;
 
-        return null;
+        try{
+            for(int i = 0; i < voices.length; i++){
+                voices[i] = AudioSystem.getClip();
+                voices[i].open(data.format, data.pcm, 0, data.pcm.length);
+            }
+        } catch(LineUnavailableException e){
+            closeVoices();
+            throw e;
+        } catch(IllegalArgumentException e){
+            // thrown by AudioSystem when there is no audio device or it cannot play the format
+            closeVoices();
+            LineUnavailableException unavailable = new LineUnavailableException("no line can play \"%s\"".formatted(audioFile.getAbsolutePath()));
+            unavailable.initCause(e);
+            throw unavailable;
+        }
     }
 
-    private Clip getClip(){
-        return this.audioClip;
+    /**
+     * returns a voice that is free or the one that started the longest time ago
+     *
+     * <p>the voices are tracked by their own play time instead of {@link Clip#isRunning()}, which stays {@code false} for
+     * a moment after {@code start()}</p>
+     */
+    private int nextVoice(){
+        long now = System.nanoTime();
+        int oldest = 0;
+
+        for(int i = 0; i < busyUntil.length; i++){
+            if(busyUntil[i] == 0 || busyUntil[i] - now <= 0)
+                return i;
+            if(busyUntil[i] - busyUntil[oldest] < 0)
+                oldest = i;
+        }
+
+        return oldest;
     }
 
     /**
-     * plays the the Sound File defined in the Constructor
+     * plays the the Sound File defined in the Constructor, does nothing when the file could not be read or the effect was closed
+     *
+     * <p>voices not {@link #open() opened} before are opened now. Will throw a {@code IllegalStateException} when that fails,
+     * for example without an audio device</p>
      * @author Lenardt Gerhardts
      * @since 1.17.1
      */
-    public void play(){
-        createClip();
-        if(getClip() != null){
-            getClip().setFramePosition(0);
-            getClip().start();
+    public synchronized void play(){
+        if(data == null || closed)
+            return;
+
+        if(mixer != null){
+            int voice = nextVoice();
+            if(busyUntil[voice] - System.nanoTime() > 0)
+                mixer.stop(mixerVoices[voice]);
+
+            mixerVoices[voice] = mixer.play(sound);
+            busyUntil[voice] = System.nanoTime() + data.getMilliseconds() * 1_000_000L;
+            return;
         }
+
+        if(voices[0] == null){
+            try{
+                open();
+            } catch(LineUnavailableException e){
+                throw new IllegalStateException("cannot open the voices of \"%s\"".formatted(audioFile.getAbsolutePath()), e);
+            }
+        }
+
+        int voice = nextVoice();
+        Clip clip = voices[voice];
+        clip.stop();
+        clip.setFramePosition(0);
+        clip.start();
+        busyUntil[voice] = System.nanoTime() + data.getMilliseconds() * 1_000_000L;
     }
 
     /**
@@ -65,9 +240,14 @@ public class SoundEffect {
      * @author Lenardt Gerhardts
      * @since 1.17.1
      */
-    public void stop(){
-        if(getClip() != null)
-            getClip().stop();
+    public synchronized void stop(){
+        for(int i = 0; i < voices.length; i++){
+            if(voices[i] != null)
+                voices[i].stop();
+            if(mixer != null && busyUntil[i] != 0)
+                mixer.stop(mixerVoices[i]);
+            busyUntil[i] = 0;
+        }
     }
 
     /**
@@ -77,9 +257,28 @@ public class SoundEffect {
      * @since 1.17.1
      */
     public long getMilliseconds(){
-        if(this.getClip() != null)
-            return (long)(this.getClip().getMicrosecondLength() * MICRO_TO_MILLIS);
+        if(data != null)
+            return data.getMilliseconds();
 
         return 0;
     }
+
+    /**
+     * closes all voices, the SoundEffect cannot be played afterwards
+     */
+    @Override
+    public synchronized void close(){
+        stop();
+        closed = true;
+        closeVoices();
+    }
+
+    private void closeVoices(){
+        for(int i = 0; i < voices.length; i++){
+            if(voices[i] != null)
+                voices[i].close();
+            voices[i] = null;
+            busyUntil[i] = 0;
+        }
+    }
 }
@@ -0,0 +1,326 @@
+package lenger.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * software Mixer summing any number of sounds into a single 16 bit stereo output line
+ *
+ * <p>sounds are read through the {@link SoundCache} by {@link #load(String) load} and converted into the output sample rate
+ * right away, a {@link Sound} holds no line of its own. A {@link SoundEffect} created with a mixer plays its voices here as
+ * well. The converted samples are kept as long as the decoded file is in use, so loading the same file again or for
+ * another effect does not convert it again. {@link #play(Sound, float, float) play} and {@link #stop(int) stop} can
+ * be called from any Thread, they only put a command into a lock free queue which the mixing Thread reads before every block.</p>
+ * <p>without calling {@link #start() start} no device is needed, {@link #render(byte[]) render} and {@link #renderToWav(File, int) renderToWav}
+ * mix into a buffer or file instead</p>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class SoundMixer implements AutoCloseable {
+    public static final float DEFAULT_SAMPLE_RATE = 44100f;
+    public static final int BLOCK_FRAMES = 512;
+
+    private static final int CHANNELS = 2, BYTES_PER_FRAME = 4;
+
+    private final AudioFormat format;
+    private final ConcurrentLinkedQueue<Command> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextVoiceId = new AtomicInteger();
+    // converted samples by decoded file, dropped once neither the SoundCache nor an effect holds the file anymore
+    private final Map<SoundData, Sound> converted = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // only touched by the Thread mixing
+    private final List<Voice> voices = new ArrayList<>();
+    private final float[] mixBuffer = new float[BLOCK_FRAMES * CHANNELS];
+
+    private volatile boolean running = false;
+    private Thread mixThread;
+    private SourceDataLine line;
+
+    /**
+     * a sound converted for one {@link SoundMixer}, it can be played by any number of voices at once
+     */
+    public static final class Sound{
+        private final SoundMixer mixer;
+        private final float[][] samples;
+
+        private Sound(SoundMixer mixer, float[][] samples){
+            this.mixer = mixer;
+            this.samples = samples;
+        }
+
+        /**
+         * returns the length in Milliseconds
+         * @return long
+         */
+        public long getMilliseconds(){
+            return (long)(samples[0].length * 1000L / mixer.format.getSampleRate());
+        }
+    }
+
+    private record Command(int voiceId, float[][] samples, float gain, float pan){
+        static final int STOP_ALL = -1;
+    }
+
+    private static final class Voice{
+        final int id;
+        final float[][] samples;
+        final float gainLeft, gainRight;
+        int position = 0;
+
+        Voice(int id, float[][] samples, float gain, float pan){
+            this.id = id;
+            this.samples = samples;
+            // constant power panning, pan goes from -1 (left) to 1 (right)
+            double angle = (Math.max(-1, Math.min(1, pan)) + 1) * Math.PI / 4;
+            this.gainLeft = (float)(gain * Math.cos(angle) * Math.sqrt(2));
+            this.gainRight = (float)(gain * Math.sin(angle) * Math.sqrt(2));
+        }
+    }
+
+    public SoundMixer(){
+        this(DEFAULT_SAMPLE_RATE);
+    }
+
+    public SoundMixer(float sampleRate){
+        format = new AudioFormat(sampleRate, 16, CHANNELS, true, false);
+    }
+
+    public AudioFormat getFormat(){
+        return format;
+    }
+
+    /**
+     * opens the default output line and starts the mixing Thread
+     * @throws LineUnavailableException
+     */
+    public synchronized void start() throws LineUnavailableException {
+        if(running)
+            return;
+
+        line = AudioSystem.getSourceDataLine(format);
+        line.open(format, BLOCK_FRAMES * BYTES_PER_FRAME * 4);
+        line.start();
+        running = true;
+
+        mixThread = new Thread(this::mixLoop, "SoundMixer");
+        mixThread.setDaemon(true);
+        mixThread.setPriority(Thread.MAX_PRIORITY);
+        mixThread.start();
+    }
+
+    private void mixLoop(){
+        byte[] block = new byte[BLOCK_FRAMES * BYTES_PER_FRAME];
+
+        while(running){
+            try{
+                render(block);
+                line.write(block, 0, block.length);
+            } catch(RuntimeException e){
+                // one broken block must not silence the mixer for good, the voices playing are dropped and mixing goes on
+                System.err.println("SoundMixer: mixing failed, stopping all voices");
+                e.printStackTrace();
+                voices.clear();
+            }
+        }
+    }
+
+    /**
+     * reads {@code filepath} through the {@link SoundCache} and converts it into the sample rate of this mixer
+     * @param filepath
+     * @return {@link Sound}
+     * @throws UnsupportedAudioFileException
+     * @throws IOException
+     */
+    public Sound load(String filepath) throws UnsupportedAudioFileException, IOException {
+        try{
+            return loadAsync(filepath).join();
+        } catch(CompletionException e){
+            if(e.getCause() instanceof UnsupportedAudioFileException u)
+                throw u;
+            if(e.getCause() instanceof IOException io)
+                throw io;
+            if(e.getCause() instanceof RuntimeException re)
+                throw re;
+
+            throw e;
+        }
+    }
+
+    /**
+     * {@link #load(String) load} on the {@link SoundCache} pool, the result fails with an {@link UnsupportedAudioFileException}
+     * or {@link IOException} as cause when the file cannot be read
+     * @param filepath
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Sound> loadAsync(String filepath){
+        return SoundCache.load(new File(filepath)).thenApplyAsync(this::convert, SoundCache.executor());
+    }
+
+    /**
+     * returns {@code data} converted into the sample rate of this mixer, converting it only the first time
+     */
+    Sound convert(SoundData data){
+        Sound sound = converted.get(data);
+        if(sound != null)
+            return sound;
+
+        // converted outside the lock, two Threads converting the same file at once keep the first result
+        Sound fresh = new Sound(this, data.toFloat(format.getSampleRate()));
+        sound = converted.putIfAbsent(data, fresh);
+        return sound == null ? fresh : sound;
+    }
+
+    /**
+     * starts playing {@code sound}
+     *
+     * <p>will throw a {@code IllegalArgumentException} when {@code sound} was loaded by another mixer</p>
+     * @param sound
+     * @param gain volume, {@code 1} keeps the original volume
+     * @param pan {@code -1} is left, {@code 0} center and {@code 1} right
+     * @return the id of the voice, for {@link #stop(int) stop}
+     */
+    public int play(Sound sound, float gain, float pan){
+        if(sound.mixer != this)
+            throw new IllegalArgumentException("sound was loaded by another mixer");
+
+        int id = nextVoiceId.getAndIncrement() & Integer.MAX_VALUE;
+        commands.add(new Command(id, sound.samples, gain, pan));
+        return id;
+    }
+
+    public int play(Sound sound){
+        return play(sound, 1, 0);
+    }
+
+    /**
+     * stops the voice returned by {@link #play(Sound, float, float) play}
+     * @param voiceId
+     */
+    public void stop(int voiceId){
+        commands.add(new Command(voiceId, null, 0, 0));
+    }
+
+    public void stopAll(){
+        commands.add(new Command(Command.STOP_ALL, null, 0, 0));
+    }
+
+    /**
+     * mixes the next {@code out.length / 4} frames of all playing voices into {@code out} as 16 bit little endian stereo
+     *
+     * <p>will throw a {@code IllegalStateException} when the mixer was started, the mixing Thread renders then</p>
+     * @param out
+     */
+    public void render(byte[] out){
+        if(running && Thread.currentThread() != mixThread)
+            throw new IllegalStateException("mixer is playing on a line, render is only available before start()");
+
+        int frames = out.length / BYTES_PER_FRAME;
+
+        for(int done = 0; done < frames; done += BLOCK_FRAMES){
+            int block = Math.min(BLOCK_FRAMES, frames - done);
+            applyCommands();
+            mixBlock(block);
+
+            for(int i = 0; i < block * CHANNELS; i++){
+                int sample = Math.round(Math.max(-1f, Math.min(1f, mixBuffer[i])) * Short.MAX_VALUE);
+                int pos = (done * CHANNELS + i) * 2;
+                out[pos] = (byte)sample;
+                out[pos + 1] = (byte)(sample >> 8);
+            }
+        }
+    }
+
+    /**
+     * renders {@code frames} frames into a WAV file, for testing without an audio device
+     * @param file
+     * @param frames
+     * @throws IOException
+     */
+    public void renderToWav(File file, int frames) throws IOException {
+        byte[] out = new byte[frames * BYTES_PER_FRAME];
+        render(out);
+
+        try(AudioInputStream in = new AudioInputStream(new ByteArrayInputStream(out), format, frames)){
+            AudioSystem.write(in, AudioFileFormat.Type.WAVE, file);
+        }
+    }
+
+    private void applyCommands(){
+        Command c;
+
+        while((c = commands.poll()) != null){
+            if(c.voiceId() == Command.STOP_ALL){
+                voices.clear();
+            }
+            else if(c.samples() == null){
+                int id = c.voiceId();
+                voices.removeIf(v -> v.id == id);
+            }
+            else {
+                voices.add(new Voice(c.voiceId(), c.samples(), c.gain(), c.pan()));
+            }
+        }
+    }
+
+    private void mixBlock(int frames){
+        Arrays.fill(mixBuffer, 0, frames * CHANNELS, 0f);
+
+        for(int v = voices.size() - 1; v >= 0; v--){
+            Voice voice = voices.get(v);
+            float[] left = voice.samples[0];
+            float[] right = voice.samples[voice.samples.length - 1];
+            int count = Math.min(frames, left.length - voice.position);
+
+            for(int f = 0; f < count; f++){
+                mixBuffer[f * 2] += left[voice.position + f] * voice.gainLeft;
+                mixBuffer[f * 2 + 1] += right[voice.position + f] * voice.gainRight;
+            }
+
+            voice.position += count;
+            if(voice.position >= left.length)
+                voices.remove(v);
+        }
+    }
+
+    /**
+     * stops the mixing Thread and closes the output line
+     */
+    @Override
+    public synchronized void close(){
+        running = false;
+
+        if(mixThread != null){
+            try {
+                mixThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            mixThread = null;
+        }
+
+        if(line != null){
+            line.drain();
+            line.close();
+            line = null;
+        }
+    }
+}
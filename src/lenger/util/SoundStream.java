@@ -0,0 +1,246 @@
+package lenger.util;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * plays long Sound Files like music or ambience without loading them into memory
+ *
+ * <p>unlike {@link SoundEffect} only the header is read on construction. While playing, one Thread reads the file in chunks
+ * through a {@link FileChannel} into a small ring buffer and a second Thread feeds the buffer into a {@link SourceDataLine},
+ * so memory use does not depend on the file length and playback starts after the first chunk.</p>
+ * @author Lenardt Gerhardts
+ * @since 17.0.1
+ */
+public class SoundStream implements AutoCloseable {
+    public static final int CHUNK_BYTES = 16 * 1024;
+    public static final int RING_CHUNKS = 8;
+
+    private File audioFile;
+    private AudioFileFormat fileFormat;
+
+    private volatile boolean playing = false;
+    private Thread reader, writer;
+    private SourceDataLine line;
+    private ByteRing ring;
+
+    public SoundStream(String filepath){
+        audioFile = new File(filepath);
+
+        try{
+            fileFormat = AudioSystem.getAudioFileFormat(audioFile);
+        } catch (UnsupportedAudioFileException e){
+            System.err.println("filepath: \"%s\" does not have a valid format".formatted(audioFile.getAbsolutePath()));
+            e.printStackTrace();
+        } catch(IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * opens the file as PCM stream, reading through a {@link FileChannel}
+     */
+    private AudioInputStream openStream() throws IOException, UnsupportedAudioFileException {
+        FileChannel channel = FileChannel.open(audioFile.toPath(), StandardOpenOption.READ);
+        AudioInputStream in = AudioSystem.getAudioInputStream(new BufferedInputStream(Channels.newInputStream(channel), CHUNK_BYTES));
+        AudioFormat format = in.getFormat();
+
+        if(format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED || format.getEncoding() == AudioFormat.Encoding.PCM_UNSIGNED)
+            return in;
+
+        AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+                format.getChannels(), format.getChannels() * 2, format.getSampleRate(), false);
+        return AudioSystem.getAudioInputStream(pcmFormat, in);
+    }
+
+    /**
+     * starts playing the Sound File from the beginning, a running playback is stopped first
+     * @author Lenardt Gerhardts
+     * @since 1.17.1
+     */
+    public synchronized void play(){
+        stop();
+
+        if(fileFormat == null)
+            return;
+
+        AudioInputStream opened = null;
+        try{
+            opened = openStream();
+            line = AudioSystem.getSourceDataLine(opened.getFormat());
+            line.open(opened.getFormat(), CHUNK_BYTES * 2);
+        } catch (UnsupportedAudioFileException | LineUnavailableException | IllegalArgumentException | IOException e){
+            e.printStackTrace();
+            line = null;
+            try{
+                if(opened != null)
+                    opened.close();
+            } catch(IOException closeFailed){
+                e.addSuppressed(closeFailed);
+            }
+            return;
+        }
+
+        AudioInputStream in = opened;
+        SourceDataLine out = line;
+        // every buffer holds whole frames only, so the line never gets half a frame
+        int frameSize = in.getFormat().getFrameSize();
+        int chunkBytes = CHUNK_BYTES - CHUNK_BYTES % frameSize;
+        ByteRing ring = new ByteRing(chunkBytes * RING_CHUNKS);
+        this.ring = ring;
+        playing = true;
+
+        reader = new Thread(() -> {
+            byte[] chunk = new byte[chunkBytes];
+            try(in){
+                int read;
+                while(playing && (read = in.readNBytes(chunk, 0, chunk.length)) > 0)
+                    ring.write(chunk, read - read % frameSize);
+            } catch (IOException e){
+                // a stop while reading is not an error
+                if(playing)
+                    e.printStackTrace();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            } finally {
+                ring.close();
+            }
+        }, "SoundStream-reader");
+
+        writer = new Thread(() -> {
+            byte[] chunk = new byte[chunkBytes];
+            out.start();
+            try{
+                int read;
+                while(playing && (read = ring.read(chunk)) > 0)
+                    out.write(chunk, 0, read);
+                if(playing)
+                    out.drain();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            } finally {
+                out.close();
+            }
+        }, "SoundStream-writer");
+
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+    }
+
+    /**
+     * stops the stream from being played further
+     * @author Lenardt Gerhardts
+     * @since 1.17.1
+     */
+    public synchronized void stop(){
+        if(!playing)
+            return;
+
+        playing = false;
+        line.stop();
+        line.flush();
+        // wakes both Threads without interrupting the reader, an interrupt would close its FileChannel mid read
+        ring.close();
+
+        try{
+            reader.join();
+            writer.join();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        line = null;
+        ring = null;
+    }
+
+    /**
+     * returns {@code true} while the stream is being played
+     * @return boolean
+     */
+    public boolean isPlaying(){
+        return playing && writer != null && writer.isAlive();
+    }
+
+    /**
+     * returns the Length in Milliseconds, {@code 0} if the file header does not tell
+     * @return long
+     */
+    public long getMilliseconds(){
+        if(fileFormat == null || fileFormat.getFrameLength() == AudioSystem.NOT_SPECIFIED)
+            return 0;
+
+        return (long)(fileFormat.getFrameLength() * 1000L / fileFormat.getFormat().getFrameRate());
+    }
+
+    @Override
+    public void close(){
+        stop();
+    }
+
+    /**
+     * fixed size byte ring buffer between one writing and one reading Thread
+     */
+    private static final class ByteRing{
+        private final byte[] buffer;
+        private int readPos = 0, size = 0;
+        private boolean closed = false;
+
+        ByteRing(int capacity){
+            buffer = new byte[capacity];
+        }
+
+        /**
+         * blocks while the buffer is full, drops the rest of {@code src} once the ring was closed
+         */
+        synchronized void write(byte[] src, int len) throws InterruptedException {
+            int done = 0;
+
+            while(done < len){
+                while(size == buffer.length && !closed)
+                    wait();
+                if(closed)
+                    return;
+
+                int writePos = (readPos + size) % buffer.length;
+                int n = Math.min(len - done, Math.min(buffer.length - size, buffer.length - writePos));
+                System.arraycopy(src, done, buffer, writePos, n);
+                size += n;
+                done += n;
+                notifyAll();
+            }
+        }
+
+        /**
+         * blocks until data is available, returns {@code 0} once the writer closed and everything was read
+         */
+        synchronized int read(byte[] dst) throws InterruptedException {
+            while(size == 0 && !closed)
+                wait();
+
+            int n = Math.min(dst.length, Math.min(size, buffer.length - readPos));
+            System.arraycopy(buffer, readPos, dst, 0, n);
+            readPos = (readPos + n) % buffer.length;
+            size -= n;
+            notifyAll();
+            return n;
+        }
+
+        synchronized void close(){
+            closed = true;
+            notifyAll();
+        }
+    }
+}